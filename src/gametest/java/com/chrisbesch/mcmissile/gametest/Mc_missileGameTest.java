@@ -0,0 +1,118 @@
+package com.chrisbesch.mcmissile.gametest;
+
+import io.grpc.Grpc;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.epoll.Epoll;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.unix.DomainSocketAddress;
+
+import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Starts the stub guidance servers the GameTests fly their missiles with, one for each transport.
+// The gametest run configuration points the connection ids in MissilePerformanceTest at them,
+// see build.gradle.
+public class Mc_missileGameTest implements ModInitializer {
+    private static final String MOD_ID = "mc-missile";
+    private static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+
+    public static final String IN_PROCESS_SERVER_NAME = "mc_missile_gametest";
+    private static final String TCP_TRANSPORT = "tcp:";
+    private static final String UNIX_TRANSPORT = "unix:";
+
+    private static boolean unixServer = false;
+
+    @Override
+    public void onInitialize() {
+        try {
+            InProcessServerBuilder.forName(IN_PROCESS_SERVER_NAME)
+                    .addService(new StubGuidanceService())
+                    .build()
+                    .start();
+            startTcpServer();
+            startUnixServer();
+        } catch (IOException e) {
+            throw new java.lang.RuntimeException("failed to start stub guidance server", e);
+        }
+        LOGGER.info("started stub guidance server {}", IN_PROCESS_SERVER_NAME);
+
+        ServerTickEvents.START_SERVER_TICK.register(
+                server -> PerformanceRecorder.getInstance().onStartServerTick());
+        ServerTickEvents.END_SERVER_TICK.register(
+                server -> PerformanceRecorder.getInstance().onEndServerTick());
+    }
+
+    // true when the Unix domain socket scenario can run
+    public static boolean hasUnixServer() {
+        return unixServer;
+    }
+
+    private static void startTcpServer() throws IOException {
+        String transport = getTransport(MissilePerformanceTest.TCP_CONNECTION_ID);
+        if (transport == null || !transport.startsWith(TCP_TRANSPORT)) {
+            LOGGER.warn("there is no tcp transport for the GameTests");
+            return;
+        }
+        // tcp:<host>:<port>
+        int port = Integer.parseInt(transport.substring(transport.lastIndexOf(':') + 1));
+        Server server =
+                Grpc.newServerBuilderForPort(port, InsecureServerCredentials.create())
+                        .addService(new StubGuidanceService())
+                        .build()
+                        .start();
+        LOGGER.info("started stub guidance server on port {}", server.getPort());
+    }
+
+    private static void startUnixServer() throws IOException {
+        String transport = getTransport(MissilePerformanceTest.UNIX_CONNECTION_ID);
+        if (transport == null || !transport.startsWith(UNIX_TRANSPORT)) {
+            LOGGER.warn("there is no unix transport for the GameTests");
+            return;
+        }
+        if (!Epoll.isAvailable()) {
+            LOGGER.warn("unix domain sockets aren't available: {}", Epoll.unavailabilityCause());
+            return;
+        }
+        Path socketPath = Path.of(transport.substring(UNIX_TRANSPORT.length()));
+        // left behind by the last run
+        Files.deleteIfExists(socketPath);
+        var eventLoopGroup = new EpollEventLoopGroup();
+        NettyServerBuilder.forAddress(
+                        new DomainSocketAddress(socketPath.toString()),
+                        InsecureServerCredentials.create())
+                .channelType(EpollServerDomainSocketChannel.class)
+                .bossEventLoopGroup(eventLoopGroup)
+                .workerEventLoopGroup(eventLoopGroup)
+                .addService(new StubGuidanceService())
+                .build()
+                .start();
+        unixServer = true;
+        LOGGER.info("started stub guidance server on {}", socketPath);
+    }
+
+    // the transport of this connection id in MC_MISSILE_GUIDANCE_TRANSPORTS
+    private static String getTransport(int connectionId) {
+        String transportsRaw = System.getenv("MC_MISSILE_GUIDANCE_TRANSPORTS");
+        if (transportsRaw == null) {
+            return null;
+        }
+        for (String transportRaw : transportsRaw.split(",")) {
+            String[] parts = transportRaw.split("=", 2);
+            if (parts.length == 2 && parts[0].equals(String.valueOf(connectionId))) {
+                return parts[1];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,355 @@
+package com.chrisbesch.mcmissile.gametest;
+
+import com.chrisbesch.mcmissile.ParallelFlightDynamics;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.component.type.FireworkExplosionComponent;
+import net.minecraft.component.type.FireworksComponent;
+import net.minecraft.entity.EntityType;
+import net.minecraft.entity.projectile.FireworkRocketEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.GameTestException;
+import net.minecraft.test.TestContext;
+import net.minecraft.text.Text;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Performance scenarios run headless with `./gradlew runGametest`.
+// The missiles are guided by StubGuidanceService through the in-process transport.
+// Each scenario records MSPT, server thread allocations and guidance latency and fails when one
+// of them regresses past its baseline in mc_missile_gametest_baselines.properties.
+public class MissilePerformanceTest implements FabricGameTest {
+    // has to match the gametest run configuration in build.gradle
+    // the default connection id uses the in-process transport
+    public static final int CONNECTION_ID = 77;
+    public static final int TCP_CONNECTION_ID = 78;
+    public static final int UNIX_CONNECTION_ID = 79;
+
+    // how long each scenario is recorded for
+    private static final int SCENARIO_TICKS = 100;
+    private static final int TICK_LIMIT = SCENARIO_TICKS + 20;
+    private static final int PIG_COUNT = 200;
+    // the missiles are a few blocks per tick fast when they reach a shell this large
+    private static final int SHELL_RADIUS = 24;
+
+    @GameTest(
+            templateName = EMPTY_STRUCTURE,
+            batchId = "mc_missile_one_missile",
+            tickLimit = TICK_LIMIT)
+    public void oneMissile(TestContext context) {
+        runScenario(context, "one_missile", () -> launchSalvo(context, 1, "plain", Vec3d.ZERO));
+    }
+
+    @GameTest(
+            templateName = EMPTY_STRUCTURE,
+            batchId = "mc_missile_fifty_missiles",
+            tickLimit = TICK_LIMIT)
+    public void fiftyMissiles(TestContext context) {
+        runScenario(context, "fifty_missiles", () -> launchSalvo(context, 50, "plain", Vec3d.ZERO));
+    }
+
+    @GameTest(
+            templateName = EMPTY_STRUCTURE,
+            batchId = "mc_missile_five_hundred_missiles",
+            tickLimit = TICK_LIMIT)
+    public void fiveHundredMissiles(TestContext context) {
+        runScenario(
+                context,
+                "five_hundred_missiles",
+                () -> launchSalvo(context, 500, "plain", Vec3d.ZERO));
+    }
+
+    // IR seekers searching through a crowd of mobs
+    @GameTest(
+            templateName = EMPTY_STRUCTURE,
+            batchId = "mc_missile_seeker_crowd",
+            tickLimit = TICK_LIMIT)
+    public void seekerCrowd(TestContext context) {
+        runScenario(
+                context,
+                "seeker_crowd",
+                () -> {
+                    for (int i = 0; i < PIG_COUNT; ++i) {
+                        context.spawnEntity(
+                                EntityType.PIG, new Vec3d(20 + i % 20, 2, -10 + i / 20));
+                    }
+                    launchSalvo(
+                            context, 50, StubGuidanceService.SEEKER_MISSILE, new Vec3d(1, 0, 0));
+                });
+    }
+
+    // Block seekers searching for diamond blocks scattered along their flight path.
+    // Most sections in range don't contain any, the palette lets the search skip them.
+    @GameTest(
+            templateName = EMPTY_STRUCTURE,
+            batchId = "mc_missile_block_seeker",
+            tickLimit = TICK_LIMIT)
+    public void blockSeeker(TestContext context) {
+        // the salvo flies up tilted towards +x
+        var direction = new Vec3d(0.5, 1, 0).normalize();
+        List<BlockPos> targets = new ArrayList<BlockPos>();
+        for (int i = 0; i < 32; ++i) {
+            var target = direction.multiply(20 + i);
+            targets.add(BlockPos.ofFloored(target.add(0.5, 2, 0.5)).add(i % 5 - 2, 0, i % 3 - 1));
+        }
+        runScenario(
+                context,
+                "block_seeker",
+                () -> {
+                    targets.forEach(
+                            target ->
+                                    context.setBlockState(
+                                            target, Blocks.DIAMOND_BLOCK.getDefaultState()));
+                    launchSalvo(
+                            context,
+                            50,
+                            StubGuidanceService.BLOCK_SEEKER_MISSILE,
+                            new Vec3d(1, 0, 0));
+                },
+                () -> {
+                    // the blank warhead doesn't destroy them, don't leave them for the next
+                    // batches
+                    targets.forEach(
+                            target -> context.setBlockState(target, Blocks.AIR.getDefaultState()));
+                    return null;
+                });
+    }
+
+    // missiles detonating in the same tick at the same spot
+    @GameTest(
+            templateName = EMPTY_STRUCTURE,
+            batchId = "mc_missile_mass_detonation",
+            tickLimit = TICK_LIMIT)
+    public void massDetonation(TestContext context) {
+        runScenario(
+                context,
+                "mass_detonation",
+                () ->
+                        launchSalvo(
+                                context, 50, StubGuidanceService.TNT_MISSILE, new Vec3d(1, 0, 0)));
+    }
+
+    // The same salvo with the flight dynamics computed on the server thread and in parallel.
+    @GameTest(
+            templateName = EMPTY_STRUCTURE,
+            batchId = "mc_missile_flight_dynamics_sequential",
+            tickLimit = TICK_LIMIT)
+    public void flightDynamicsSequential(TestContext context) {
+        runFlightDynamicsScenario(context, "flight_dynamics_sequential", false);
+    }
+
+    @GameTest(
+            templateName = EMPTY_STRUCTURE,
+            batchId = "mc_missile_flight_dynamics_parallel",
+            tickLimit = TICK_LIMIT)
+    public void flightDynamicsParallel(TestContext context) {
+        runFlightDynamicsScenario(context, "flight_dynamics_parallel", true);
+    }
+
+    private static void runFlightDynamicsScenario(
+            TestContext context, String scenario, boolean parallel) {
+        boolean wasEnabled = ParallelFlightDynamics.getInstance().isEnabled();
+        runScenario(
+                context,
+                scenario,
+                () -> {
+                    ParallelFlightDynamics.getInstance().setEnabled(parallel);
+                    launchSalvo(context, 500, "plain", Vec3d.ZERO);
+                },
+                () -> {
+                    ParallelFlightDynamics.getInstance().setEnabled(wasEnabled);
+                    return null;
+                });
+    }
+
+    // The same salvo guided by the same stub guidance server over each transport.
+    @GameTest(
+            templateName = EMPTY_STRUCTURE,
+            batchId = "mc_missile_transport_in_process",
+            tickLimit = TICK_LIMIT)
+    public void transportInProcess(TestContext context) {
+        runTransportScenario(context, "transport_in_process", CONNECTION_ID);
+    }
+
+    @GameTest(
+            templateName = EMPTY_STRUCTURE,
+            batchId = "mc_missile_transport_tcp",
+            tickLimit = TICK_LIMIT)
+    public void transportTcp(TestContext context) {
+        runTransportScenario(context, "transport_tcp", TCP_CONNECTION_ID);
+    }
+
+    @GameTest(
+            templateName = EMPTY_STRUCTURE,
+            batchId = "mc_missile_transport_unix",
+            tickLimit = TICK_LIMIT)
+    public void transportUnix(TestContext context) {
+        if (!Mc_missileGameTest.hasUnixServer()) {
+            // Unix domain sockets need epoll, i.e. Linux
+            context.complete();
+            return;
+        }
+        runTransportScenario(context, "transport_unix", UNIX_CONNECTION_ID);
+    }
+
+    private static void runTransportScenario(
+            TestContext context, String scenario, int connectionId) {
+        runScenario(
+                context,
+                scenario,
+                connectionId,
+                () -> launchSalvo(context, connectionId, 50, "plain", Vec3d.ZERO),
+                () -> null);
+    }
+
+    // Fast missiles fired inside a closed shell of one block thick walls.
+    // Without the swept collision check they tunnel through the walls.
+    @GameTest(
+            templateName = EMPTY_STRUCTURE,
+            batchId = "mc_missile_swept_collision",
+            tickLimit = TICK_LIMIT)
+    public void sweptCollision(TestContext context) {
+        runShellScenario(context, "swept_collision", new Vec3d(1, 0, 0));
+    }
+
+    // the same, fired straight down
+    @GameTest(
+            templateName = EMPTY_STRUCTURE,
+            batchId = "mc_missile_swept_collision_steep",
+            tickLimit = TICK_LIMIT)
+    public void sweptCollisionSteep(TestContext context) {
+        runShellScenario(context, "swept_collision_steep", new Vec3d(0, -4, 0));
+    }
+
+    private static void runShellScenario(TestContext context, String scenario, Vec3d direction) {
+        var center = new BlockPos(0, 2, 0);
+        runScenario(
+                context,
+                scenario,
+                () -> {
+                    fillShell(context, center, Blocks.STONE.getDefaultState());
+                    launchSalvo(context, 50, "plain", direction);
+                },
+                () -> {
+                    var shell =
+                            new Box(context.getAbsolutePos(center)).expand(SHELL_RADIUS - 1 + 0.5D);
+                    long tunneled =
+                            context.getWorld()
+                                    .getEntitiesByType(
+                                            EntityType.FIREWORK_ROCKET,
+                                            shell.expand(SHELL_RADIUS * 4),
+                                            rocket -> !shell.contains(rocket.getPos()))
+                                    .size();
+                    // don't leave the shell behind for the next batches
+                    fillShell(context, center, Blocks.AIR.getDefaultState());
+                    return tunneled == 0
+                            ? null
+                            : scenario + ": " + tunneled + " missiles tunneled through the wall";
+                });
+    }
+
+    // the faces of the cube with SHELL_RADIUS around center
+    private static void fillShell(TestContext context, BlockPos center, BlockState state) {
+        for (int x = -SHELL_RADIUS; x <= SHELL_RADIUS; ++x) {
+            for (int y = -SHELL_RADIUS; y <= SHELL_RADIUS; ++y) {
+                for (int z = -SHELL_RADIUS; z <= SHELL_RADIUS; ++z) {
+                    if (Math.abs(x) == SHELL_RADIUS
+                            || Math.abs(y) == SHELL_RADIUS
+                            || Math.abs(z) == SHELL_RADIUS) {
+                        context.setBlockState(center.add(x, y, z), state);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void runScenario(TestContext context, String scenario, Runnable setup) {
+        runScenario(context, scenario, setup, () -> null);
+    }
+
+    private static void runScenario(
+            TestContext context, String scenario, Runnable setup, Supplier<String> check) {
+        runScenario(context, scenario, CONNECTION_ID, setup, check);
+    }
+
+    // check returns a description of what went wrong or null
+    private static void runScenario(
+            TestContext context,
+            String scenario,
+            int connectionId,
+            Runnable setup,
+            Supplier<String> check) {
+        PerformanceRecorder.getInstance().start(connectionId);
+        setup.run();
+        context.waitAndRun(
+                SCENARIO_TICKS,
+                () -> {
+                    var result = PerformanceRecorder.getInstance().stop(scenario, connectionId);
+                    String failure = check.get();
+                    if (failure != null) {
+                        throw new GameTestException(failure);
+                    }
+                    String regressions = PerformanceRecorder.getInstance().checkBaselines(result);
+                    if (regressions != null) {
+                        throw new GameTestException(regressions);
+                    }
+                    context.complete();
+                });
+    }
+
+    // Launch count missiles from the test structure.
+    // The missiles start slightly tilted from the vertical towards direction.
+    private static void launchSalvo(TestContext context, int count, String name, Vec3d direction) {
+        launchSalvo(context, CONNECTION_ID, count, name, direction);
+    }
+
+    private static void launchSalvo(
+            TestContext context, int connectionId, int count, String name, Vec3d direction) {
+        var world = context.getWorld();
+        var launchPos = context.getAbsolute(new Vec3d(0.5, 2, 0.5));
+        var launchVel = new Vec3d(0, 1, 0).add(direction.multiply(0.5));
+        for (int i = 0; i < count; ++i) {
+            var rocket =
+                    new FireworkRocketEntity(
+                            world,
+                            createMissileStack(connectionId, name),
+                            null,
+                            launchPos.getX(),
+                            launchPos.getY(),
+                            launchPos.getZ(),
+                            true);
+            rocket.setVelocity(launchVel.getX(), launchVel.getY(), launchVel.getZ(), 0.5f, 1.0f);
+            world.spawnEntity(rocket);
+        }
+    }
+
+    private static ItemStack createMissileStack(int connectionId, String name) {
+        var stack = new ItemStack(Items.FIREWORK_ROCKET);
+        stack.set(DataComponentTypes.CUSTOM_NAME, Text.literal("m/" + connectionId + "/" + name));
+        // the creeper explosion gives the budget for any hardware config the stub hands out
+        stack.set(
+                DataComponentTypes.FIREWORKS,
+                new FireworksComponent(
+                        1,
+                        List.of(
+                                new FireworkExplosionComponent(
+                                        FireworkExplosionComponent.Type.CREEPER,
+                                        IntList.of(0xff0000),
+                                        IntList.of(),
+                                        false,
+                                        false))));
+        return stack;
+    }
+}
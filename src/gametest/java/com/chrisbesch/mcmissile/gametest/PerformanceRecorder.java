@@ -0,0 +1,207 @@
+package com.chrisbesch.mcmissile.gametest;
+
+import com.chrisbesch.mcmissile.guidance.GuidanceStubManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+// Records the server tick time and the server thread allocations while a scenario runs.
+// Only one scenario can be recorded at a time, that's why each scenario has its own GameTest
+// batch.
+// When MC_MISSILE_GAMETEST_RECORD_BASELINES is set to the path of the baselines file, the
+// measured values are written there instead of being checked, see
+// `./gradlew runRecordGametestBaselines`.
+public class PerformanceRecorder {
+    private static final String MOD_ID = "mc-missile";
+    private static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+
+    private static final String BASELINES_RESOURCE = "/mc_missile_gametest_baselines.properties";
+    // allowed regression above a baseline
+    private static final double TOLERANCE = 0.25;
+    private static final String RECORD_BASELINES_ENV = "MC_MISSILE_GAMETEST_RECORD_BASELINES";
+    private static final String[] BASELINES_HEADER = {
+        "# Baselines of the performance scenarios in MissilePerformanceTest.",
+        "# Recorded with `./gradlew runRecordGametestBaselines`, don't edit them by hand.",
+        "# A scenario fails when a metric is more than 25% above its baseline.",
+        "# A scenario also fails when one of its metrics has no baseline.",
+        "# <scenario>.mspt: average milliseconds per tick while the scenario runs",
+        "# <scenario>.allocatedBytesPerTick: bytes allocated by the server thread per tick",
+        "# <scenario>.roundTripMillis: guidance round trip time as measured by the mod",
+    };
+
+    private static PerformanceRecorder instance;
+
+    private final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final Properties baselines = loadBaselines();
+
+    private boolean recording = false;
+    private long tickStartNanos = 0;
+    private long tickNanos = 0;
+    private int ticks = 0;
+    private long startAllocatedBytes = 0;
+
+    public record Result(
+            String scenario, double mspt, double allocatedBytesPerTick, double roundTripMillis) {}
+
+    private PerformanceRecorder() {
+        /* singleton */
+    }
+
+    public static PerformanceRecorder getInstance() {
+        if (instance == null) {
+            instance = new PerformanceRecorder();
+        }
+        return instance;
+    }
+
+    // has to be called on the server thread
+    public void start(int connectionId) {
+        if (this.recording) {
+            throw new IllegalStateException("already recording a scenario");
+        }
+        // the latency of the previous scenario mustn't leak into this one
+        GuidanceStubManager.getInstance().getLatencyStats(connectionId).reset();
+        this.recording = true;
+        this.tickStartNanos = 0;
+        this.tickNanos = 0;
+        this.ticks = 0;
+        this.startAllocatedBytes = this.threadMXBean.getCurrentThreadAllocatedBytes();
+    }
+
+    // has to be called on the server thread
+    public Result stop(String scenario, int connectionId) {
+        long allocatedBytes =
+                this.threadMXBean.getCurrentThreadAllocatedBytes() - this.startAllocatedBytes;
+        this.recording = false;
+        int ticks = Math.max(this.ticks, 1);
+        var result =
+                new Result(
+                        scenario,
+                        this.tickNanos / 1e6 / ticks,
+                        (double) allocatedBytes / ticks,
+                        GuidanceStubManager.getInstance()
+                                .getLatencyStats(connectionId)
+                                .getReport()
+                                .getRoundTripMillis());
+        LOGGER.info(
+                "scenario {}: {} ticks, {} mspt, {} allocated bytes per tick, {} ms guidance round"
+                        + " trip",
+                scenario,
+                this.ticks,
+                result.mspt(),
+                result.allocatedBytesPerTick(),
+                result.roundTripMillis());
+        return result;
+    }
+
+    public void onStartServerTick() {
+        if (this.recording) {
+            this.tickStartNanos = System.nanoTime();
+        }
+    }
+
+    public void onEndServerTick() {
+        // the scenario might have started in the middle of this tick
+        if (!this.recording || this.tickStartNanos == 0) {
+            return;
+        }
+        this.tickNanos += System.nanoTime() - this.tickStartNanos;
+        ++this.ticks;
+    }
+
+    // Return a description of every metric that regressed past its baseline or has no baseline.
+    // Return null when there is no regression.
+    // When recording, store the result as the new baseline instead.
+    public String checkBaselines(Result result) {
+        String recordPath = System.getenv(RECORD_BASELINES_ENV);
+        if (recordPath != null) {
+            this.recordBaselines(Path.of(recordPath), result);
+            return null;
+        }
+        var regressions = new StringBuilder();
+        checkBaseline(regressions, result.scenario(), "mspt", result.mspt());
+        checkBaseline(
+                regressions,
+                result.scenario(),
+                "allocatedBytesPerTick",
+                result.allocatedBytesPerTick());
+        // without missile states there is no round trip
+        if (result.roundTripMillis() > 0.0D) {
+            checkBaseline(
+                    regressions, result.scenario(), "roundTripMillis", result.roundTripMillis());
+        }
+        return regressions.isEmpty() ? null : regressions.toString();
+    }
+
+    private void checkBaseline(
+            StringBuilder regressions, String scenario, String metric, double value) {
+        String baselineStr = this.baselines.getProperty(scenario + "." + metric);
+        if (baselineStr == null) {
+            regressions.append(
+                    String.format(
+                            "%s %s has no baseline, record it with `./gradlew"
+                                    + " runRecordGametestBaselines`; ",
+                            scenario, metric));
+            return;
+        }
+        double baseline = Double.parseDouble(baselineStr);
+        if (value > baseline * (1 + TOLERANCE)) {
+            regressions.append(
+                    String.format(
+                            "%s %s regressed: %.2f > baseline %.2f; ",
+                            scenario, metric, value, baseline));
+        }
+    }
+
+    private void recordBaselines(Path path, Result result) {
+        this.baselines.setProperty(result.scenario() + ".mspt", format(result.mspt()));
+        this.baselines.setProperty(
+                result.scenario() + ".allocatedBytesPerTick",
+                format(result.allocatedBytesPerTick()));
+        // without missile states there is no round trip
+        if (result.roundTripMillis() > 0.0D) {
+            this.baselines.setProperty(
+                    result.scenario() + ".roundTripMillis", format(result.roundTripMillis()));
+        }
+        // Properties.store would drop the comments and shuffle the keys
+        List<String> lines = new ArrayList<String>(List.of(BASELINES_HEADER));
+        for (String key : new TreeSet<String>(this.baselines.stringPropertyNames())) {
+            lines.add(key + "=" + this.baselines.getProperty(key));
+        }
+        try {
+            Files.write(path, lines);
+        } catch (IOException e) {
+            throw new java.lang.RuntimeException("failed to write GameTest baselines", e);
+        }
+        LOGGER.info("recorded baselines of scenario {} to {}", result.scenario(), path);
+    }
+
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+
+    private static Properties loadBaselines() {
+        var properties = new Properties();
+        try (InputStream in = PerformanceRecorder.class.getResourceAsStream(BASELINES_RESOURCE)) {
+            if (in == null) {
+                throw new java.lang.RuntimeException(
+                        "missing GameTest baselines " + BASELINES_RESOURCE);
+            }
+            properties.load(in);
+        } catch (IOException e) {
+            throw new java.lang.RuntimeException("failed to read GameTest baselines", e);
+        }
+        return properties;
+    }
+}
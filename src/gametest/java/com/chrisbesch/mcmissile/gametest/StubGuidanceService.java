@@ -0,0 +1,86 @@
+package com.chrisbesch.mcmissile.gametest;
+
+import com.chrisbesch.mcmissile.guidance.ControlInput;
+import com.chrisbesch.mcmissile.guidance.GuidanceGrpc;
+import com.chrisbesch.mcmissile.guidance.GuidanceLatencyStats;
+import com.chrisbesch.mcmissile.guidance.HealthRequest;
+import com.chrisbesch.mcmissile.guidance.HealthResponse;
+import com.chrisbesch.mcmissile.guidance.MissileHardwareConfig;
+import com.chrisbesch.mcmissile.guidance.MissileState;
+
+import io.grpc.stub.StreamObserver;
+
+// A guidance server that answers immediately and flies every missile straight ahead.
+// The hardware depends on the missile name:
+// - "seeker": IR seeker targeting pigs
+// - "tnt": TNT warhead, explodes after DETONATION_TIME ticks
+// - "block": block seeker targeting diamond blocks
+// - anything else: the default hardware
+public class StubGuidanceService extends GuidanceGrpc.GuidanceImplBase {
+    public static final String SEEKER_MISSILE = "seeker";
+    public static final String TNT_MISSILE = "tnt";
+    public static final String BLOCK_SEEKER_MISSILE = "block";
+    private static final int DETONATION_TIME = 3;
+
+    @Override
+    public StreamObserver<MissileState> getGuidance(StreamObserver<ControlInput> responseObserver) {
+        return new StreamObserver<MissileState>() {
+            private int nextId = 1;
+
+            @Override
+            public void onNext(MissileState missileState) {
+                long receivedAtMicros = GuidanceLatencyStats.nowMicros();
+                if (missileState.getDestroyed()) {
+                    return;
+                }
+                var name = missileState.getMissile().getName();
+                var controlInput =
+                        ControlInput.newBuilder()
+                                .setId(this.nextId)
+                                .setStateTime(missileState.getTime())
+                                .setStateSentAtMicros(missileState.getSentAtMicros())
+                                .setReceivedAtMicros(receivedAtMicros);
+                if (this.nextId == 1) {
+                    controlInput.setHardwareConfig(getHardwareConfig(name));
+                }
+                if (name.equals(TNT_MISSILE) && missileState.getTime() >= DETONATION_TIME) {
+                    controlInput.setExplode(true);
+                }
+                ++this.nextId;
+                responseObserver.onNext(
+                        controlInput.setSentAtMicros(GuidanceLatencyStats.nowMicros()).build());
+            }
+
+            @Override
+            public void onError(Throwable t) {}
+
+            @Override
+            public void onCompleted() {
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    @Override
+    public void healthCheck(
+            HealthRequest request, StreamObserver<HealthResponse> responseObserver) {
+        responseObserver.onNext(HealthResponse.newBuilder().build());
+        responseObserver.onCompleted();
+    }
+
+    private static MissileHardwareConfig getHardwareConfig(String name) {
+        var hardwareConfig = MissileHardwareConfig.newBuilder();
+        if (name.equals(SEEKER_MISSILE)) {
+            hardwareConfig
+                    .setSeeker(MissileHardwareConfig.Seeker.IR_SEEKER_M)
+                    .setSeekerEntityName("minecraft:pig");
+        } else if (name.equals(BLOCK_SEEKER_MISSILE)) {
+            hardwareConfig
+                    .setSeeker(MissileHardwareConfig.Seeker.BLOCK_SEEKER_M)
+                    .setSeekerBlockName("minecraft:diamond_block");
+        } else if (name.equals(TNT_MISSILE)) {
+            hardwareConfig.setWarhead(MissileHardwareConfig.Warhead.TNT_M);
+        }
+        return hardwareConfig.build();
+    }
+}
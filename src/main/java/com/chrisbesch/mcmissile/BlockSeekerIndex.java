@@ -0,0 +1,248 @@
+package com.chrisbesch.mcmissile;
+
+import net.minecraft.block.Block;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.ChunkSection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+// This singleton finds the targets of block seeker heads.
+// Scanning every block in range would mean millions of block states for each lock attempt.
+// Instead:
+// - only the chunk sections in range and in the field of view are looked at, nearest first
+// - the palette of a section tells whether the block is in there at all, so most sections are
+//   skipped without looking at a single block
+// - the positions of the block in a section are cached until a block in that section changes
+// The work of a single lock attempt is bounded, a missile that didn't find anything tries again
+// later.
+// Only use this from the server thread.
+public /* singleton */ class BlockSeekerIndex {
+    // bounds of a single lock attempt
+    private static final int MAX_SECTIONS_PER_SEARCH = 256;
+    private static final int MAX_SECTION_SCANS_PER_SEARCH = 4;
+    private static final int MAX_RAYCASTS_PER_SEARCH = 8;
+    // each cached section holds at most 4096 positions
+    private static final int MAX_CACHED_SECTIONS = 1024;
+    // half the diagonal of a chunk section
+    private static final double SECTION_RADIUS = 8.0D * Math.sqrt(3.0D);
+
+    private static BlockSeekerIndex instance = null;
+
+    // world -> section -> block -> the positions of that block in the section (BlockPos.asLong)
+    private final Map<RegistryKey<World>, Map<Long, Map<Block, long[]>>> sectionHits =
+            new HashMap<RegistryKey<World>, Map<Long, Map<Block, long[]>>>();
+    private int cachedSections = 0;
+
+    private record Candidate(BlockPos pos, double dotProd) {}
+
+    private BlockSeekerIndex() {
+        /* singleton */
+    }
+
+    public static BlockSeekerIndex getInstance() {
+        if (instance == null) {
+            instance = new BlockSeekerIndex();
+        }
+        return instance;
+    }
+
+    // Return the block closest to the heading that is in range, in the field of view and passes
+    // canSee.
+    // Return null when there is none or the search ran out of budget.
+    public BlockPos findTarget(
+            ServerWorld world,
+            Block block,
+            Vec3d center,
+            Vec3d heading,
+            double range,
+            double fov,
+            Predicate<BlockPos> canSee) {
+        Vec3d normHeading = heading.normalize();
+        double minDotProd = Math.cos(Math.toRadians(fov));
+
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        int scans = 0;
+        long[] sections = this.getSectionsInView(world, center, normHeading, range, fov);
+        for (int i = 0; i < sections.length && i < MAX_SECTIONS_PER_SEARCH; ++i) {
+            long[] hits = this.getCachedHits(world, sections[i], block);
+            if (hits == null) {
+                ChunkSection section = this.getLoadedSection(world, sections[i]);
+                if (section == null) {
+                    continue;
+                }
+                // the palette check, most sections end here
+                boolean hasBlock = !section.isEmpty() && section.hasAny(state -> state.isOf(block));
+                if (hasBlock) {
+                    if (scans >= MAX_SECTION_SCANS_PER_SEARCH) {
+                        continue;
+                    }
+                    ++scans;
+                }
+                hits = hasBlock ? scanSection(section, sections[i], block) : new long[0];
+                this.cacheHits(world, sections[i], block, hits);
+            }
+            for (long hit : hits) {
+                BlockPos pos = BlockPos.fromLong(hit);
+                Vec3d toTarget = Vec3d.ofCenter(pos).subtract(center);
+                double distance = toTarget.length();
+                if (distance > range || distance == 0.0D) {
+                    continue;
+                }
+                // the same field of view check as for entities
+                double dotProd = normHeading.dotProduct(toTarget.multiply(1.0D / distance));
+                if (dotProd >= minDotProd) {
+                    candidates.add(new Candidate(pos, dotProd));
+                }
+            }
+        }
+
+        // only raycast the best candidates
+        candidates.sort(Comparator.comparingDouble(Candidate::dotProd).reversed());
+        for (int i = 0; i < candidates.size() && i < MAX_RAYCASTS_PER_SEARCH; ++i) {
+            if (canSee.test(candidates.get(i).pos())) {
+                return candidates.get(i).pos();
+            }
+        }
+        return null;
+    }
+
+    // Call this when a block changed.
+    public void invalidate(ServerWorld world, BlockPos pos) {
+        var worldHits = this.sectionHits.get(world.getRegistryKey());
+        if (worldHits == null) {
+            return;
+        }
+        if (worldHits.remove(ChunkSectionPos.toLong(pos)) != null) {
+            --this.cachedSections;
+        }
+    }
+
+    // Return the sections that may contain blocks in range and in the field of view, nearest
+    // first.
+    private long[] getSectionsInView(
+            ServerWorld world, Vec3d center, Vec3d normHeading, double range, double fov) {
+        int minX = ChunkSectionPos.getSectionCoord(MathHelper.floor(center.x - range));
+        int maxX = ChunkSectionPos.getSectionCoord(MathHelper.floor(center.x + range));
+        int minY =
+                Math.max(
+                        ChunkSectionPos.getSectionCoord(MathHelper.floor(center.y - range)),
+                        world.getBottomSectionCoord());
+        int maxY =
+                Math.min(
+                        ChunkSectionPos.getSectionCoord(MathHelper.floor(center.y + range)),
+                        world.getTopSectionCoord() - 1);
+        int minZ = ChunkSectionPos.getSectionCoord(MathHelper.floor(center.z - range));
+        int maxZ = ChunkSectionPos.getSectionCoord(MathHelper.floor(center.z + range));
+
+        List<long[]> sections = new ArrayList<long[]>();
+        for (int x = minX; x <= maxX; ++x) {
+            for (int y = minY; y <= maxY; ++y) {
+                for (int z = minZ; z <= maxZ; ++z) {
+                    Vec3d toSection =
+                            new Vec3d(
+                                            ChunkSectionPos.getBlockCoord(x) + 8.0D,
+                                            ChunkSectionPos.getBlockCoord(y) + 8.0D,
+                                            ChunkSectionPos.getBlockCoord(z) + 8.0D)
+                                    .subtract(center);
+                    double distance = toSection.length();
+                    if (distance > range + SECTION_RADIUS) {
+                        continue;
+                    }
+                    // the missile might be inside the section
+                    if (distance > SECTION_RADIUS) {
+                        // the field of view widened by the angle the section takes up
+                        double angle =
+                                Math.acos(
+                                        MathHelper.clamp(
+                                                normHeading.dotProduct(
+                                                        toSection.multiply(1.0D / distance)),
+                                                -1.0D,
+                                                1.0D));
+                        if (angle > Math.toRadians(fov) + Math.asin(SECTION_RADIUS / distance)) {
+                            continue;
+                        }
+                    }
+                    sections.add(
+                            new long[] {
+                                ChunkSectionPos.asLong(x, y, z), Double.doubleToLongBits(distance)
+                            });
+                }
+            }
+        }
+        // positive doubles sort like their bits
+        sections.sort(Comparator.comparingLong(section -> section[1]));
+        return sections.stream().mapToLong(section -> section[0]).toArray();
+    }
+
+    private long[] getCachedHits(ServerWorld world, long sectionPos, Block block) {
+        var worldHits = this.sectionHits.get(world.getRegistryKey());
+        if (worldHits == null) {
+            return null;
+        }
+        var blockHits = worldHits.get(sectionPos);
+        return blockHits == null ? null : blockHits.get(block);
+    }
+
+    // Return null when the section isn't loaded.
+    private ChunkSection getLoadedSection(ServerWorld world, long sectionPos) {
+        // this never loads the chunk
+        var chunk =
+                world.getChunkManager()
+                        .getWorldChunk(
+                                ChunkSectionPos.unpackX(sectionPos),
+                                ChunkSectionPos.unpackZ(sectionPos));
+        if (chunk == null) {
+            return null;
+        }
+        return chunk.getSection(world.sectionCoordToIndex(ChunkSectionPos.unpackY(sectionPos)));
+    }
+
+    // Return the positions of the block in that section.
+    private static long[] scanSection(ChunkSection section, long sectionPos, Block block) {
+        int minX = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackX(sectionPos));
+        int minY = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(sectionPos));
+        int minZ = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackZ(sectionPos));
+        long[] hits = new long[16 * 16 * 16];
+        int count = 0;
+        for (int y = 0; y < 16; ++y) {
+            for (int z = 0; z < 16; ++z) {
+                for (int x = 0; x < 16; ++x) {
+                    if (section.getBlockState(x, y, z).isOf(block)) {
+                        hits[count++] = BlockPos.asLong(minX + x, minY + y, minZ + z);
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(hits, count);
+    }
+
+    private void cacheHits(ServerWorld world, long sectionPos, Block block, long[] hits) {
+        if (this.cachedSections >= MAX_CACHED_SECTIONS) {
+            // simply start over
+            this.sectionHits.clear();
+            this.cachedSections = 0;
+        }
+        this.sectionHits
+                .computeIfAbsent(
+                        world.getRegistryKey(), key -> new HashMap<Long, Map<Block, long[]>>())
+                .computeIfAbsent(
+                        sectionPos,
+                        key -> {
+                            ++this.cachedSections;
+                            return new HashMap<Block, long[]>();
+                        })
+                .put(block, hits);
+    }
+}
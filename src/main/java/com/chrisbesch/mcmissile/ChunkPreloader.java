@@ -0,0 +1,135 @@
+package com.chrisbesch.mcmissile;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.Vec3d;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+// This singleton loads the chunks in front of the missiles before they get there.
+// A fast missile flies hundreds of blocks and would otherwise freeze at the border of the loaded
+// chunks or make the server load chunks while the missile moves.
+// Each missile holds chunk tickets along its predicted path. Adding a ticket only queues the
+// chunk, it is loaded in the background by the chunk system.
+// When the prediction changes, the tickets behind the missile are released. All tickets of a
+// missile are released when it is removed. In case that doesn't happen, the tickets expire.
+// Only use this from the server thread.
+public /* singleton */ class ChunkPreloader {
+    private static final String MOD_ID = "mc-missile";
+    private static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+
+    // 31 = 33 - 2 is the entity ticking level, so the missile keeps flying in these chunks
+    private static final int TICKET_RADIUS = 2;
+    // longer than any missile flies
+    private static final int TICKET_EXPIRY_TICKS = 20 * 60;
+    // so that a single missile can't load the whole world
+    private static final int MAX_CHUNKS_PER_MISSILE = 16;
+    // stalls are logged at most once in this many ticks
+    private static final int STALL_LOG_TICKS = 20 * 10;
+
+    private static final ChunkTicketType<ChunkPos> MISSILE_TICKET =
+            ChunkTicketType.create(
+                    "mc_missile", Comparator.comparingLong(ChunkPos::toLong), TICKET_EXPIRY_TICKS);
+
+    private static ChunkPreloader instance = null;
+
+    // the chunks each missile holds a ticket for
+    private final Map<Entity, Set<ChunkPos>> tickets = new HashMap<Entity, Set<ChunkPos>>();
+
+    // number of times a missile entered a chunk that wasn't entity ticking
+    private long stalls = 0;
+    // stalls since the last time they were logged
+    private int unloggedStalls = 0;
+    private int ticksSinceStallLog = 0;
+
+    private ChunkPreloader() {
+        /* singleton */
+    }
+
+    public static ChunkPreloader getInstance() {
+        if (instance == null) {
+            instance = new ChunkPreloader();
+        }
+        return instance;
+    }
+
+    // Hold tickets for the chunks along the predicted path of this missile and release the rest.
+    public void update(ServerWorld world, Entity missile, Iterable<Vec3d> predictedPath) {
+        Set<ChunkPos> chunks = new LinkedHashSet<ChunkPos>();
+        chunks.add(missile.getChunkPos());
+        for (Vec3d pos : predictedPath) {
+            if (chunks.size() >= MAX_CHUNKS_PER_MISSILE) {
+                break;
+            }
+            chunks.add(new ChunkPos(BlockPos.ofFloored(pos)));
+        }
+        var previousChunks = this.tickets.getOrDefault(missile, Set.of());
+        for (ChunkPos chunk : chunks) {
+            if (!previousChunks.contains(chunk)) {
+                world.getChunkManager().addTicket(MISSILE_TICKET, chunk, TICKET_RADIUS, chunk);
+            }
+        }
+        for (ChunkPos chunk : previousChunks) {
+            if (!chunks.contains(chunk)) {
+                world.getChunkManager().removeTicket(MISSILE_TICKET, chunk, TICKET_RADIUS, chunk);
+            }
+        }
+        this.tickets.put(missile, chunks);
+    }
+
+    // Release all tickets of this missile.
+    public void release(ServerWorld world, Entity missile) {
+        var chunks = this.tickets.remove(missile);
+        if (chunks == null) {
+            return;
+        }
+        for (ChunkPos chunk : chunks) {
+            world.getChunkManager().removeTicket(MISSILE_TICKET, chunk, TICKET_RADIUS, chunk);
+        }
+    }
+
+    // Call this after the missile moved.
+    public void checkStall(ServerWorld world, Entity missile) {
+        if (!world.shouldTickEntity(missile.getBlockPos())) {
+            ++this.stalls;
+            ++this.unloggedStalls;
+        }
+    }
+
+    // Under load many missiles stall in the same tick, so they are logged together.
+    public void onEndServerTick() {
+        ++this.ticksSinceStallLog;
+        if (this.ticksSinceStallLog < STALL_LOG_TICKS) {
+            return;
+        }
+        if (this.unloggedStalls > 0) {
+            LOGGER.warn(
+                    "missiles entered chunks before they were loaded {} times in the last {}"
+                            + " ticks, {} stalls so far",
+                    this.unloggedStalls,
+                    STALL_LOG_TICKS,
+                    this.stalls);
+        }
+        this.unloggedStalls = 0;
+        this.ticksSinceStallLog = 0;
+    }
+
+    public long getStalls() {
+        return this.stalls;
+    }
+
+    // number of chunks held by all missiles
+    public int getTicketCount() {
+        return this.tickets.values().stream().mapToInt(Set::size).sum();
+    }
+}
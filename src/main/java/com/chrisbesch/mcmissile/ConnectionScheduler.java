@@ -0,0 +1,308 @@
+package com.chrisbesch.mcmissile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// This singleton shares the per-tick missile resources fairly between the connection ids:
+// - seeker searches, i.e. the target queries and raycasts of seeker heads without a lock
+// - missile states sent to the guidance servers, both their number and their bytes
+// Each tick, every connection id with missiles in flight gets a quota of both budgets. The quotas
+// are weighted max-min fair: a connection id is guaranteed its weighted share of the budget and
+// what other connection ids don't need is split between the rest by weight.
+// The quotas are allocated from the missiles in flight at the start of the tick. Missiles launched
+// during the tick, e.g. a fresh salvo, aren't part of them. They use the budget no connection id
+// was allocated, so when nothing is contended a salvo gets what it needs on its launch tick.
+// A missile over its quota tries again next tick.
+// The weights are configured with MC_MISSILE_CONNECTION_WEIGHTS, e.g. "69=2,420=1", the default
+// weight is 1.
+// The gRPC callback time isn't weighted, GuidanceCallbackExecutor only isolates the connection ids
+// from each other.
+// Only use this from the server thread.
+public /* singleton */ class ConnectionScheduler {
+    private static final String MOD_ID = "mc-missile";
+    private static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+
+    // how much the recent history is smoothed, the lower the smoother
+    private static final double EMA_ALPHA = 0.05D;
+    private static final int DEFAULT_WEIGHT = 1;
+    // Connection ids without missiles at the start of the tick don't have a quota yet.
+    // They may use this much even when there is no spare budget left.
+    private static final int NEW_CONNECTION_QUOTA = 1;
+    // the assumed size of a missile state before a connection id has sent any
+    private static final int DEFAULT_STATE_BYTES = 256;
+
+    private static ConnectionScheduler instance = null;
+
+    private final Map<Integer, Integer> weights;
+    private final int seekerBudget;
+    private final int stateBudget;
+    private final int stateByteBudget;
+
+    // the quotas of this tick
+    private Map<Integer, Integer> seekerQuotas = new HashMap<Integer, Integer>();
+    private Map<Integer, Integer> stateQuotas = new HashMap<Integer, Integer>();
+    private Map<Integer, Integer> stateByteQuotas = new HashMap<Integer, Integer>();
+    // the budget of this tick that isn't part of any quota
+    private int spareSeekers = 0;
+    private int spareStates = 0;
+    private int spareStateBytes = 0;
+
+    // the usage of this tick
+    private final Map<Integer, Usage> usages = new HashMap<Integer, Usage>();
+
+    public static class Usage {
+        private int seekerSearches = 0;
+        private int states = 0;
+        private int stateBytes = 0;
+        private int deferred = 0;
+
+        // exponential moving averages per tick
+        private double avgSeekerSearches = 0.0D;
+        private double avgStates = 0.0D;
+        private double avgStateBytes = 0.0D;
+        private double avgDeferred = 0.0D;
+
+        public double getSeekerSearches() {
+            return this.avgSeekerSearches;
+        }
+
+        public double getStates() {
+            return this.avgStates;
+        }
+
+        public double getStateBytes() {
+            return this.avgStateBytes;
+        }
+
+        // seeker searches and missile states pushed to a later tick
+        public double getDeferred() {
+            return this.avgDeferred;
+        }
+
+        private void endTick() {
+            this.avgSeekerSearches += EMA_ALPHA * (this.seekerSearches - this.avgSeekerSearches);
+            this.avgStates += EMA_ALPHA * (this.states - this.avgStates);
+            this.avgStateBytes += EMA_ALPHA * (this.stateBytes - this.avgStateBytes);
+            this.avgDeferred += EMA_ALPHA * (this.deferred - this.avgDeferred);
+            this.seekerSearches = 0;
+            this.states = 0;
+            this.stateBytes = 0;
+            this.deferred = 0;
+        }
+    }
+
+    private ConnectionScheduler() {
+        this.weights = parseWeights(System.getenv("MC_MISSILE_CONNECTION_WEIGHTS"));
+        String seekerBudgetStr = System.getenv("MC_MISSILE_SEEKER_BUDGET");
+        this.seekerBudget = seekerBudgetStr == null ? 200 : Integer.parseInt(seekerBudgetStr);
+        String stateBudgetStr = System.getenv("MC_MISSILE_STATE_BUDGET");
+        this.stateBudget = stateBudgetStr == null ? 500 : Integer.parseInt(stateBudgetStr);
+        String stateByteBudgetStr = System.getenv("MC_MISSILE_STATE_BYTE_BUDGET");
+        this.stateByteBudget =
+                stateByteBudgetStr == null ? 256 * 1024 : Integer.parseInt(stateByteBudgetStr);
+        LOGGER.info(
+                "connection scheduler shares {} seeker searches and {} missile states with {}"
+                        + " bytes per tick, weights {}",
+                this.seekerBudget,
+                this.stateBudget,
+                this.stateByteBudget,
+                this.weights);
+    }
+
+    public static ConnectionScheduler getInstance() {
+        if (instance == null) {
+            instance = new ConnectionScheduler();
+        }
+        return instance;
+    }
+
+    public void onStartServerTick() {
+        // every flying missile might need one search and one state this tick
+        Map<Integer, Integer> demands = MissileGovernor.getInstance().getActiveMissiles();
+        this.seekerQuotas = this.allocate(this.seekerBudget, demands);
+        this.stateQuotas = this.allocate(this.stateBudget, demands);
+        Map<Integer, Integer> byteDemands = new HashMap<Integer, Integer>();
+        for (var demand : demands.entrySet()) {
+            byteDemands.put(
+                    demand.getKey(), demand.getValue() * this.getStateBytes(demand.getKey()));
+        }
+        this.stateByteQuotas = this.allocate(this.stateByteBudget, byteDemands);
+        this.spareSeekers = getSpare(this.seekerBudget, this.seekerQuotas);
+        this.spareStates = getSpare(this.stateBudget, this.stateQuotas);
+        this.spareStateBytes = getSpare(this.stateByteBudget, this.stateByteQuotas);
+    }
+
+    public void onEndServerTick() {
+        for (var usage : this.usages.values()) {
+            usage.endTick();
+        }
+    }
+
+    // Return true when a missile of this connection id may search for a target this tick.
+    // Over its quota, the spare budget is used, e.g. by missiles launched this tick.
+    public boolean tryAcquireSeeker(int connectionId) {
+        var usage = this.getUsage(connectionId);
+        if (usage.seekerSearches >= this.getSeekerQuota(connectionId)) {
+            if (this.spareSeekers <= 0) {
+                ++usage.deferred;
+                return false;
+            }
+            --this.spareSeekers;
+        }
+        ++usage.seekerSearches;
+        return true;
+    }
+
+    // Return true when a missile of this connection id may send its state this tick.
+    // Over its quota, the spare budget is used, e.g. by missiles launched this tick.
+    public boolean tryAcquireState(int connectionId) {
+        var usage = this.getUsage(connectionId);
+        boolean overStates = usage.states >= this.getStateQuota(connectionId);
+        boolean overStateBytes = usage.stateBytes >= this.getStateByteQuota(connectionId);
+        int stateBytes = this.getStateBytes(connectionId);
+        if ((overStates && this.spareStates <= 0)
+                || (overStateBytes && this.spareStateBytes < stateBytes)) {
+            ++usage.deferred;
+            return false;
+        }
+        if (overStates) {
+            --this.spareStates;
+        }
+        if (overStateBytes) {
+            this.spareStateBytes -= stateBytes;
+        }
+        ++usage.states;
+        return true;
+    }
+
+    public void recordStateBytes(int connectionId, int bytes) {
+        this.getUsage(connectionId).stateBytes += bytes;
+    }
+
+    public Usage getUsage(int connectionId) {
+        return this.usages.computeIfAbsent(connectionId, id -> new Usage());
+    }
+
+    public int getWeight(int connectionId) {
+        return this.weights.getOrDefault(connectionId, DEFAULT_WEIGHT);
+    }
+
+    public int getSeekerQuota(int connectionId) {
+        return this.seekerQuotas.getOrDefault(connectionId, NEW_CONNECTION_QUOTA);
+    }
+
+    public int getStateQuota(int connectionId) {
+        return this.stateQuotas.getOrDefault(connectionId, NEW_CONNECTION_QUOTA);
+    }
+
+    public int getStateByteQuota(int connectionId) {
+        return this.stateByteQuotas.getOrDefault(
+                connectionId, NEW_CONNECTION_QUOTA * this.getStateBytes(connectionId));
+    }
+
+    // the recent average size of a missile state of this connection id
+    private int getStateBytes(int connectionId) {
+        var usage = this.usages.get(connectionId);
+        if (usage == null || usage.avgStates <= 0.0D) {
+            return DEFAULT_STATE_BYTES;
+        }
+        return Math.max(1, (int) Math.ceil(usage.avgStateBytes / usage.avgStates));
+    }
+
+    // Weighted max-min fair allocation of the budget (water-filling).
+    // Connection ids that need less than their share get what they need, the rest of the budget is
+    // split between the others by weight. The quotas never add up to more than the budget.
+    private Map<Integer, Integer> allocate(int budget, Map<Integer, Integer> demands) {
+        Map<Integer, Integer> quotas = new HashMap<Integer, Integer>();
+        List<Integer> unsatisfied = new ArrayList<Integer>();
+        for (var demand : demands.entrySet()) {
+            if (demand.getValue() > 0) {
+                unsatisfied.add(demand.getKey());
+                quotas.put(demand.getKey(), 0);
+            }
+        }
+        int remaining = budget;
+        while (!unsatisfied.isEmpty()) {
+            double totalWeight = 0.0D;
+            for (int connectionId : unsatisfied) {
+                totalWeight += this.getWeight(connectionId);
+            }
+            // first hand out what the small connection ids need
+            boolean satisfiedAny = false;
+            for (int connectionId : new ArrayList<Integer>(unsatisfied)) {
+                int need = demands.get(connectionId) - quotas.get(connectionId);
+                double share = remaining * this.getWeight(connectionId) / totalWeight;
+                if (need <= share) {
+                    quotas.put(connectionId, quotas.get(connectionId) + need);
+                    remaining -= need;
+                    unsatisfied.remove((Integer) connectionId);
+                    satisfiedAny = true;
+                }
+            }
+            if (satisfiedAny) {
+                continue;
+            }
+            // all remaining connection ids need more than their share
+            int left = remaining;
+            for (int connectionId : unsatisfied) {
+                int share = (int) (remaining * this.getWeight(connectionId) / totalWeight);
+                quotas.put(connectionId, quotas.get(connectionId) + share);
+                left -= share;
+            }
+            // Hand out the rounding remainder one by one.
+            // Connection ids without any quota come first so that nobody starves, then the
+            // heavier ones.
+            unsatisfied.sort(
+                    Comparator.comparingInt((Integer connectionId) -> quotas.get(connectionId))
+                            .thenComparing(
+                                    Comparator.comparingInt(
+                                                    (Integer connectionId) ->
+                                                            this.getWeight(connectionId))
+                                            .reversed()));
+            for (int i = 0; left > 0 && i < unsatisfied.size(); ++i) {
+                int connectionId = unsatisfied.get(i);
+                quotas.put(connectionId, quotas.get(connectionId) + 1);
+                --left;
+            }
+            break;
+        }
+        return quotas;
+    }
+
+    private static int getSpare(int budget, Map<Integer, Integer> quotas) {
+        int spare = budget;
+        for (int quota : quotas.values()) {
+            spare -= quota;
+        }
+        return Math.max(0, spare);
+    }
+
+    private static Map<Integer, Integer> parseWeights(String weightsRaw) {
+        Map<Integer, Integer> weights = new HashMap<Integer, Integer>();
+        if (weightsRaw == null || weightsRaw.isEmpty()) {
+            return weights;
+        }
+        for (String weightRaw : weightsRaw.split(",")) {
+            String[] parts = weightRaw.split("=", 2);
+            if (parts.length != 2) {
+                throw new java.lang.RuntimeException(
+                        "MC_MISSILE_CONNECTION_WEIGHTS entry '"
+                                + weightRaw
+                                + "' needs to look like <connection id>=<weight>");
+            }
+            int weight = Integer.parseInt(parts[1]);
+            if (weight <= 0) {
+                throw new java.lang.RuntimeException(
+                        "the weight of connection id " + parts[0] + " needs to be positive");
+            }
+            weights.put(Integer.parseInt(parts[0]), weight);
+        }
+        return weights;
+    }
+}
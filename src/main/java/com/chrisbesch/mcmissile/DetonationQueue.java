@@ -0,0 +1,134 @@
+package com.chrisbesch.mcmissile;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// This singleton collects the warhead detonations of a tick and resolves them at the end of the
+// tick.
+// When a salvo arrives, many explosions overlap. Each of them would compute its own destruction
+// rays, entity exposure and client packets. Instead, detonations closer than MERGE_DISTANCE to each
+// other are merged into a single explosion.
+//
+// Gameplay tolerance:
+// The merged explosion has the power of the strongest merged detonation, at the power weighted
+// center of the detonations. Overlapping explosions clear mostly the same blocks, and an entity
+// hit by several explosions in the same tick only takes the strongest hit because of its
+// invulnerability frames. So the merged explosion destroys the blocks of the strongest detonation,
+// shifted by at most MERGE_DISTANCE. Blocks at the far edge of the other detonations, up to
+// MERGE_DISTANCE beyond the merged explosion's reach, are spared.
+// Only use this from the server thread.
+public /* singleton */ class DetonationQueue {
+    private static final String MOD_ID = "mc-missile";
+    private static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+
+    // in blocks
+    private static final double MERGE_DISTANCE = 2.0D;
+
+    private static DetonationQueue instance = null;
+
+    private final Map<ServerWorld, List<Detonation>> detonations =
+            new HashMap<ServerWorld, List<Detonation>>();
+
+    private DetonationQueue() {}
+
+    public static DetonationQueue getInstance() {
+        if (instance == null) {
+            instance = new DetonationQueue();
+        }
+        return instance;
+    }
+
+    // The explosion happens at the end of the tick.
+    public void enqueue(ServerWorld world, Entity source, Vec3d pos, float power) {
+        var worldDetonations = this.detonations.get(world);
+        if (worldDetonations == null) {
+            worldDetonations = new ArrayList<Detonation>();
+            this.detonations.put(world, worldDetonations);
+        }
+        worldDetonations.add(new Detonation(source, pos, power));
+    }
+
+    // Call this at the end of each world tick.
+    public void resolve(ServerWorld world) {
+        // Explosions might cause new detonations. Those are resolved in the next tick.
+        var worldDetonations = this.detonations.remove(world);
+        if (worldDetonations == null) {
+            return;
+        }
+
+        List<Blast> blasts = new ArrayList<Blast>();
+        for (var detonation : worldDetonations) {
+            Blast mergeInto = null;
+            for (var blast : blasts) {
+                if (blast.getCenter().squaredDistanceTo(detonation.pos)
+                        <= MERGE_DISTANCE * MERGE_DISTANCE) {
+                    mergeInto = blast;
+                    break;
+                }
+            }
+            if (mergeInto == null) {
+                mergeInto = new Blast(detonation.source);
+                blasts.add(mergeInto);
+            }
+            mergeInto.add(detonation);
+        }
+
+        if (blasts.size() < worldDetonations.size()) {
+            LOGGER.debug(
+                    "merged {} missile detonations into {} explosions",
+                    worldDetonations.size(),
+                    blasts.size());
+        }
+        for (var blast : blasts) {
+            Vec3d center = blast.getCenter();
+            world.createExplosion(
+                    blast.source,
+                    center.x,
+                    center.y,
+                    center.z,
+                    blast.getPower(),
+                    World.ExplosionSourceType.TNT);
+        }
+    }
+
+    private record Detonation(Entity source, Vec3d pos, float power) {}
+
+    // multiple detonations merged into one explosion
+    private static class Blast {
+        private final Entity source;
+        // sum of the power of all merged detonations
+        private double totalPower = 0.0D;
+        // sum of power * position of all merged detonations
+        private Vec3d weightedPos = Vec3d.ZERO;
+        // power of the strongest merged detonation
+        private float maxPower = 0.0F;
+
+        private Blast(Entity source) {
+            this.source = source;
+        }
+
+        private void add(Detonation detonation) {
+            this.totalPower += detonation.power;
+            this.weightedPos = this.weightedPos.add(detonation.pos.multiply(detonation.power));
+            this.maxPower = Math.max(this.maxPower, detonation.power);
+        }
+
+        private Vec3d getCenter() {
+            return this.weightedPos.multiply(1.0D / this.totalPower);
+        }
+
+        private float getPower() {
+            return this.maxPower;
+        }
+    }
+}
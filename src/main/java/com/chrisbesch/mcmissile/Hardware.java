@@ -2,6 +2,8 @@ package com.chrisbesch.mcmissile;
 
 import com.chrisbesch.mcmissile.guidance.MissileHardwareConfig;
 
+import net.minecraft.block.Block;
+import net.minecraft.block.Blocks;
 import net.minecraft.component.type.FireworkExplosionComponent;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.LivingEntity;
@@ -40,6 +42,10 @@ public class Hardware {
     // needs to be divisable by 3
     private static final int GLOWSTONE_DUST_VALUE = 10 * 9;
 
+    // shared by all missiles, so that their seeker heads share the cells of SeekerTargetIndex
+    private static final TypeFilter<Entity, LivingEntity> LIVING_ENTITY_FILTER =
+            TypeFilter.instanceOf(LivingEntity.class);
+
     // There is no way to build a missile with a smaller budget.
     private static final int MIN_BUDGET =
             PAPER_VALUE * 1 / 3
@@ -47,6 +53,9 @@ public class Hardware {
                     + GUNPOWDER_VALUE * 1 / 3
                     + DYE_VALUE * 1 / 3;
 
+    // the config this hardware was built from
+    public MissileHardwareConfig config;
+
     public int cost = 0;
 
     public Integer timeToLive;
@@ -71,6 +80,8 @@ public class Hardware {
     public double seekerHeadRange;
     public boolean seekerHeadShouldTargetEntity;
     public TypeFilter<Entity, ?> sensorHeadEntityFilter;
+    public boolean seekerHeadShouldTargetBlock;
+    public Block sensorHeadBlock;
 
     public boolean shouldDetonate;
     public float detonationPower;
@@ -92,6 +103,7 @@ public class Hardware {
     }
 
     public Hardware(MissileHardwareConfig hardwareConfig) {
+        this.config = hardwareConfig;
         switch (hardwareConfig.getWarhead()) {
             case BLANK:
                 this.cost += 0;
@@ -144,23 +156,43 @@ public class Hardware {
             case NO_SEEKER:
                 this.cost += 0;
                 this.seekerHeadShouldTargetEntity = false;
+                this.seekerHeadShouldTargetBlock = false;
                 break;
             case IR_SEEKER_M:
                 this.cost += 500;
                 this.seekerHeadShouldTargetEntity = true;
+                this.seekerHeadShouldTargetBlock = false;
                 this.seekerHeadTargetPosVariance = 0.0D;
                 this.seekerHeadTargetVelVariance = 0.0D;
                 this.seekerHeadFOV = 20.0D;
                 this.seekerHeadRange = 200.0D;
                 var seekerEntityName = hardwareConfig.getSeekerEntityName();
                 if (seekerEntityName == null || seekerEntityName == "") {
-                    this.sensorHeadEntityFilter = TypeFilter.instanceOf(LivingEntity.class);
+                    this.sensorHeadEntityFilter = LIVING_ENTITY_FILTER;
                 } else {
                     this.sensorHeadEntityFilter =
                             (TypeFilter<Entity, ?>)
                                     Registries.ENTITY_TYPE.get(Identifier.of(seekerEntityName));
                 }
                 break;
+            case BLOCK_SEEKER_M:
+                this.cost += 500;
+                this.seekerHeadShouldTargetEntity = false;
+                this.seekerHeadTargetPosVariance = 0.0D;
+                this.seekerHeadTargetVelVariance = 0.0D;
+                this.seekerHeadFOV = 20.0D;
+                // blocks are a lot more than entities, look closer
+                this.seekerHeadRange = 64.0D;
+                // unknown blocks are air, that can't be targeted
+                var seekerBlockId = Identifier.tryParse(hardwareConfig.getSeekerBlockName());
+                this.sensorHeadBlock =
+                        seekerBlockId == null ? Blocks.AIR : Registries.BLOCK.get(seekerBlockId);
+                this.seekerHeadShouldTargetBlock = this.sensorHeadBlock != Blocks.AIR;
+                if (!this.seekerHeadShouldTargetBlock) {
+                    LOGGER.warn(
+                            "block seeker can't target '{}'", hardwareConfig.getSeekerBlockName());
+                }
+                break;
             default:
                 LOGGER.error("unknown seeker");
                 return;
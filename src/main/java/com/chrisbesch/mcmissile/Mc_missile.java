@@ -1,8 +1,13 @@
 package com.chrisbesch.mcmissile;
 
+import com.chrisbesch.mcmissile.guidance.GuidanceProvider;
 import com.chrisbesch.mcmissile.guidance.GuidanceStubManager;
+import com.chrisbesch.mcmissile.guidance.TelemetryServer;
 
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.loader.api.FabricLoader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,6 +20,9 @@ public class Mc_missile implements ModInitializer {
     // That way, it's clear which mod wrote info, warnings, and errors.
     public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
 
+    // other mods can guide missiles inside the JVM by implementing this entrypoint
+    public static final String GUIDANCE_PROVIDER_ENTRYPOINT = "mc_missile:guidance";
+
     @Override
     public void onInitialize() {
         // This code runs as soon as Minecraft is in a mod-load-ready state.
@@ -29,7 +37,33 @@ public class Mc_missile implements ModInitializer {
         }
         String[] connectionIdStrs = connectionIdStrsRaw.split(",");
         for (String connectionIdStr : connectionIdStrs) {
-            GuidanceStubManager.getInstance().createStub(Integer.parseInt(connectionIdStr));
+            GuidanceStubManager.getInstance().addConnection(Integer.parseInt(connectionIdStr));
+        }
+        for (GuidanceProvider provider :
+                FabricLoader.getInstance()
+                        .getEntrypoints(GUIDANCE_PROVIDER_ENTRYPOINT, GuidanceProvider.class)) {
+            GuidanceStubManager.getInstance().registerProvider(provider);
         }
+        TelemetryServer.getInstance().start();
+
+        CommandRegistrationCallback.EVENT.register(
+                (dispatcher, registryAccess, environment) -> MissileCommand.register(dispatcher));
+
+        ServerTickEvents.START_SERVER_TICK.register(
+                server -> {
+                    MissileGovernor.getInstance().onStartServerTick();
+                    ConnectionScheduler.getInstance().onStartServerTick();
+                });
+        ServerTickEvents.END_SERVER_TICK.register(
+                server -> {
+                    MissileGovernor.getInstance().onEndServerTick();
+                    ConnectionScheduler.getInstance().onEndServerTick();
+                    SeekerTargetIndex.getInstance().onEndServerTick();
+                    ChunkPreloader.getInstance().onEndServerTick();
+                });
+        ServerTickEvents.START_WORLD_TICK.register(
+                world -> ParallelFlightDynamics.getInstance().tick(world));
+        ServerTickEvents.END_WORLD_TICK.register(
+                world -> DetonationQueue.getInstance().resolve(world));
     }
 }
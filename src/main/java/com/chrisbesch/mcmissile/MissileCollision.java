@@ -0,0 +1,141 @@
+package com.chrisbesch.mcmissile;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.ShapeContext;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.hit.BlockHitResult;
+import net.minecraft.util.hit.EntityHitResult;
+import net.minecraft.util.hit.HitResult;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.util.shape.VoxelShape;
+import net.minecraft.world.World;
+
+import java.util.function.Predicate;
+
+// Swept collision detection for missiles.
+// Missiles are fast, so the entire segment they travel in a tick is tested before they move.
+// Blocks are found by walking the voxels along the segment (a DDA).
+// Entities are found by querying small boxes along the segment instead of one huge box around it.
+public class MissileCollision {
+    // ProjectileUtil uses the same margin around entity bounding boxes
+    private static final double ENTITY_MARGIN = 0.3D;
+    // Split the segment into pieces this long for the entity broad phase.
+    // A single box around a long diagonal segment would contain way too many entities.
+    private static final double BROAD_PHASE_STEP = 4.0D;
+
+    // Return the first thing hit on the segment from start to end.
+    // Return a miss when nothing is hit.
+    public static HitResult sweep(
+            World world, Entity missile, Vec3d start, Vec3d end, Predicate<Entity> predicate) {
+        HitResult blockHitResult = raycastBlocks(world, missile, start, end);
+        // entities behind the block can't be hit
+        Vec3d entityEnd =
+                blockHitResult.getType() == HitResult.Type.MISS ? end : blockHitResult.getPos();
+        EntityHitResult entityHitResult =
+                raycastEntities(world, missile, start, entityEnd, predicate);
+        return entityHitResult != null ? entityHitResult : blockHitResult;
+    }
+
+    private static HitResult raycastBlocks(World world, Entity missile, Vec3d start, Vec3d end) {
+        ShapeContext shapeContext = ShapeContext.of(missile);
+        BlockPos.Mutable blockPos = new BlockPos.Mutable();
+
+        double dx = end.x - start.x;
+        double dy = end.y - start.y;
+        double dz = end.z - start.z;
+        int x = MathHelper.floor(start.x);
+        int y = MathHelper.floor(start.y);
+        int z = MathHelper.floor(start.z);
+        int stepX = (int) Math.signum(dx);
+        int stepY = (int) Math.signum(dy);
+        int stepZ = (int) Math.signum(dz);
+        // how much of the segment is needed to cross an entire voxel
+        double tDeltaX = stepX == 0 ? Double.MAX_VALUE : 1.0D / Math.abs(dx);
+        double tDeltaY = stepY == 0 ? Double.MAX_VALUE : 1.0D / Math.abs(dy);
+        double tDeltaZ = stepZ == 0 ? Double.MAX_VALUE : 1.0D / Math.abs(dz);
+        // how much of the segment is needed to reach the next voxel boundary
+        double tMaxX =
+                stepX == 0
+                        ? Double.MAX_VALUE
+                        : (stepX > 0 ? x + 1 - start.x : start.x - x) * tDeltaX;
+        double tMaxY =
+                stepY == 0
+                        ? Double.MAX_VALUE
+                        : (stepY > 0 ? y + 1 - start.y : start.y - y) * tDeltaY;
+        double tMaxZ =
+                stepZ == 0
+                        ? Double.MAX_VALUE
+                        : (stepZ > 0 ? z + 1 - start.z : start.z - z) * tDeltaZ;
+
+        while (true) {
+            blockPos.set(x, y, z);
+            // never load chunks for a collision check
+            if (!world.isOutOfHeightLimit(y) && world.isChunkLoaded(x >> 4, z >> 4)) {
+                BlockState blockState = world.getBlockState(blockPos);
+                if (!blockState.isAir()) {
+                    VoxelShape shape = blockState.getCollisionShape(world, blockPos, shapeContext);
+                    BlockHitResult blockHitResult = shape.raycast(start, end, blockPos);
+                    if (blockHitResult != null) {
+                        return blockHitResult;
+                    }
+                }
+            }
+            if (tMaxX > 1.0D && tMaxY > 1.0D && tMaxZ > 1.0D) {
+                break;
+            }
+            // step into the neighbouring voxel the segment enters first
+            if (tMaxX < tMaxY && tMaxX < tMaxZ) {
+                x += stepX;
+                tMaxX += tDeltaX;
+            } else if (tMaxY < tMaxZ) {
+                y += stepY;
+                tMaxY += tDeltaY;
+            } else {
+                z += stepZ;
+                tMaxZ += tDeltaZ;
+            }
+        }
+        return BlockHitResult.createMissed(
+                end, Direction.getFacing(dx, dy, dz), BlockPos.ofFloored(end));
+    }
+
+    // return null when no entity is hit
+    private static EntityHitResult raycastEntities(
+            World world, Entity missile, Vec3d start, Vec3d end, Predicate<Entity> predicate) {
+        Vec3d segment = end.subtract(start);
+        int pieces = Math.max(1, MathHelper.ceil(segment.length() / BROAD_PHASE_STEP));
+
+        Entity bestEntity = null;
+        Vec3d bestPos = null;
+        double bestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < pieces; ++i) {
+            Vec3d pieceStart = start.add(segment.multiply((double) i / pieces));
+            Vec3d pieceEnd = start.add(segment.multiply((double) (i + 1) / pieces));
+            // broad phase
+            Box pieceBox = new Box(pieceStart, pieceEnd).expand(ENTITY_MARGIN + 1.0D);
+            for (Entity entity : world.getOtherEntities(missile, pieceBox, predicate)) {
+                // narrow phase, always against the entire segment
+                var hitPos = entity.getBoundingBox().expand(ENTITY_MARGIN).raycast(start, end);
+                if (hitPos.isEmpty()) {
+                    continue;
+                }
+                double distance = start.squaredDistanceTo(hitPos.get());
+                if (distance < bestDistance) {
+                    bestEntity = entity;
+                    bestPos = hitPos.get();
+                    bestDistance = distance;
+                }
+            }
+            // Every hit on this piece has been found now.
+            // Hits in the later pieces can't be closer.
+            if (bestEntity != null && bestDistance <= start.squaredDistanceTo(pieceEnd)) {
+                break;
+            }
+        }
+        return bestEntity == null ? null : new EntityHitResult(bestEntity, bestPos);
+    }
+}
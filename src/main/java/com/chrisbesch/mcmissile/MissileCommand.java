@@ -0,0 +1,175 @@
+package com.chrisbesch.mcmissile;
+
+import com.chrisbesch.mcmissile.guidance.GuidanceStubManager;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.builder.RequiredArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.Text;
+
+// The /mc_missile admin command.
+// - /mc_missile connection list|add <id>|remove <id> changes the guidance servers at runtime
+// - /mc_missile status shows the missile governor, the guidance latency, the usage of each
+//   connection id and hedging
+public class MissileCommand {
+    // connection ids are two digits in the missile name
+    private static final int MAX_CONNECTION_ID = 99;
+
+    public static void register(CommandDispatcher<ServerCommandSource> dispatcher) {
+        var connectionCommand =
+                CommandManager.literal("connection")
+                        .then(
+                                CommandManager.literal("list")
+                                        .executes(MissileCommand::listConnections))
+                        .then(
+                                CommandManager.literal("add")
+                                        .then(
+                                                connectionIdArgument()
+                                                        .executes(MissileCommand::addConnection)))
+                        .then(
+                                CommandManager.literal("remove")
+                                        .then(
+                                                connectionIdArgument()
+                                                        .executes(
+                                                                MissileCommand::removeConnection)));
+        dispatcher.register(
+                CommandManager.literal("mc_missile")
+                        // only operators
+                        .requires(source -> source.hasPermissionLevel(3))
+                        .then(connectionCommand)
+                        .then(CommandManager.literal("status").executes(MissileCommand::status)));
+    }
+
+    private static RequiredArgumentBuilder<ServerCommandSource, Integer> connectionIdArgument() {
+        return CommandManager.argument("id", IntegerArgumentType.integer(0, MAX_CONNECTION_ID));
+    }
+
+    private static int listConnections(CommandContext<ServerCommandSource> context) {
+        var connectionIds = GuidanceStubManager.getInstance().getConnectionIds();
+        context.getSource()
+                .sendFeedback(() -> Text.literal("guidance servers: " + connectionIds), false);
+        return connectionIds.size();
+    }
+
+    private static int addConnection(CommandContext<ServerCommandSource> context) {
+        int connectionId = IntegerArgumentType.getInteger(context, "id");
+        if (GuidanceStubManager.getInstance().hasStub(connectionId)) {
+            context.getSource()
+                    .sendError(Text.literal("guidance server " + connectionId + " already exists"));
+            return 0;
+        }
+        try {
+            GuidanceStubManager.getInstance().addConnection(connectionId);
+        } catch (RuntimeException e) {
+            context.getSource()
+                    .sendError(
+                            Text.literal(
+                                    "can't add guidance server "
+                                            + connectionId
+                                            + ": "
+                                            + e.getMessage()));
+            return 0;
+        }
+        context.getSource()
+                .sendFeedback(() -> Text.literal("added guidance server " + connectionId), true);
+        return 1;
+    }
+
+    private static int removeConnection(CommandContext<ServerCommandSource> context) {
+        int connectionId = IntegerArgumentType.getInteger(context, "id");
+        if (!GuidanceStubManager.getInstance().hasStub(connectionId)) {
+            context.getSource()
+                    .sendError(Text.literal("guidance server " + connectionId + " doesn't exist"));
+            return 0;
+        }
+        GuidanceStubManager.getInstance().removeConnection(connectionId);
+        context.getSource()
+                .sendFeedback(() -> Text.literal("removed guidance server " + connectionId), true);
+        return 1;
+    }
+
+    private static int status(CommandContext<ServerCommandSource> context) {
+        var source = context.getSource();
+        var governor = MissileGovernor.getInstance();
+        source.sendFeedback(
+                () ->
+                        Text.literal(
+                                String.format(
+                                        "governor: %s, %.1f mspt, %.1f mspt in missiles",
+                                        governor.getLevel(),
+                                        governor.getMspt(),
+                                        governor.getMissileMspt())),
+                false);
+        var chunkPreloader = ChunkPreloader.getInstance();
+        source.sendFeedback(
+                () ->
+                        Text.literal(
+                                String.format(
+                                        "chunk preloading: %d chunks held, %d stalls",
+                                        chunkPreloader.getTicketCount(),
+                                        chunkPreloader.getStalls())),
+                false);
+        for (int connectionId : GuidanceStubManager.getInstance().getConnectionIds()) {
+            var report =
+                    GuidanceStubManager.getInstance().getLatencyStats(connectionId).getReport();
+            source.sendFeedback(
+                    () ->
+                            Text.literal(
+                                    String.format(
+                                            "%02d: %d missiles, round trip %.1fms, processing"
+                                                    + " %.1fms, tick phase %.1fms",
+                                            connectionId,
+                                            governor.getActiveMissiles(connectionId),
+                                            report.getRoundTripMillis(),
+                                            report.getProcessingMillis(),
+                                            report.getTickPhaseMillis())),
+                    false);
+            var scheduler = ConnectionScheduler.getInstance();
+            var usage = scheduler.getUsage(connectionId);
+            double callbackMillis =
+                    GuidanceStubManager.getInstance().getCallbackNanos(connectionId) / 1.0E6D;
+            source.sendFeedback(
+                    () ->
+                            Text.literal(
+                                    String.format(
+                                            "%02d: weight %d, seeker %.1f/%d per tick, states"
+                                                    + " %.1f/%d per tick, %.1f/%.1f KiB/s,"
+                                                    + " %.1f deferred per tick, %.0fms"
+                                                    + " callbacks",
+                                            connectionId,
+                                            scheduler.getWeight(connectionId),
+                                            usage.getSeekerSearches(),
+                                            scheduler.getSeekerQuota(connectionId),
+                                            usage.getStates(),
+                                            scheduler.getStateQuota(connectionId),
+                                            usage.getStateBytes() * 20.0D / 1024.0D,
+                                            scheduler.getStateByteQuota(connectionId)
+                                                    * 20.0D
+                                                    / 1024.0D,
+                                            usage.getDeferred(),
+                                            callbackMillis)),
+                    false);
+            if (GuidanceStubManager.getInstance().isHedged(connectionId)) {
+                var hedgeStats = GuidanceStubManager.getInstance().getHedgeStats(connectionId);
+                source.sendFeedback(
+                        () ->
+                                Text.literal(
+                                        String.format(
+                                                "%02d: primary won %d, hedge won %d, %d"
+                                                        + " duplicates, hedge cost %d KiB",
+                                                connectionId,
+                                                hedgeStats.getWins(
+                                                        GuidanceStubManager.PRIMARY_REPLICA),
+                                                hedgeStats.getWins(
+                                                        GuidanceStubManager.HEDGE_REPLICA),
+                                                hedgeStats.getDuplicates(),
+                                                hedgeStats.getHedgeBytes() / 1024)),
+                        false);
+            }
+        }
+        return 1;
+    }
+}
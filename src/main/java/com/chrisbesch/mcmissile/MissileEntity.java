@@ -0,0 +1,24 @@
+package com.chrisbesch.mcmissile;
+
+// Every FireworkRocketEntity implements this through the MissileMixin.
+// Use it to talk to missiles from outside the mixin.
+public interface MissileEntity {
+    // true iff the firework rocket has been identified as a missile
+    boolean isMissile();
+
+    // The parallel flight dynamics are split in two, see ParallelFlightDynamics.
+    // Called on the server thread before the world ticks its entities.
+    // Return true when computeParallelTick should be called for this missile.
+    boolean prepareParallelTick(int serverTick);
+
+    // Called on any thread, only touches this missile.
+    void computeParallelTick();
+
+    // Called when the missile is removed for good, e.g. exploded, disarmed or killed.
+    // Ends the guidance connection and releases everything the missile holds.
+    void destroyMissile();
+
+    // Called when the missile is unloaded with its chunk.
+    // It is saved in the entity NBT and resumes its flight when it is loaded again.
+    void suspendMissile();
+}
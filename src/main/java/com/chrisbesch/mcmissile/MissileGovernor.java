@@ -0,0 +1,240 @@
+package com.chrisbesch.mcmissile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// This singleton keeps missiles from pulling the server below 20 ticks per second.
+// It watches the recent milliseconds per tick (MSPT) and how much of that is spent ticking
+// missiles. When the server falls behind because of missiles, it degrades them gracefully,
+// one level at a time:
+// 1. seeker heads search for targets less often
+// 2. missile states are sent to the guidance server less often
+// 3. new launches are rejected, the rockets fly as plain fireworks
+// Independent of the load, there are caps on the number of flying missiles in total and for each
+// connection id.
+// Only use this from the server thread.
+public /* singleton */ class MissileGovernor {
+    private static final String MOD_ID = "mc-missile";
+    private static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+
+    public enum Level {
+        NORMAL,
+        REDUCED_SEEKER_RATE,
+        REDUCED_STATE_RATE,
+        LAUNCHES_REJECTED,
+    }
+
+    // how much the recent history is smoothed, the lower the smoother
+    private static final double EMA_ALPHA = 0.05D;
+    // Only degrade when the missiles take at least this share of the tick.
+    // Otherwise degrading the missiles won't help.
+    private static final double MIN_MISSILE_SHARE = 0.1D;
+    // Only change the level once in this many ticks so that it doesn't flicker.
+    private static final int LEVEL_CHANGE_TICKS = 20;
+    // when degraded, seeker heads only search every SEEKER_INTERVAL ticks
+    private static final int SEEKER_INTERVAL = 4;
+    // when degraded, states are only sent every STATE_INTERVAL ticks
+    private static final int STATE_INTERVAL = 2;
+    // at most this many missiles loaded from disk resume their guidance each tick
+    private static final int MAX_RESUMES_PER_TICK = 10;
+    // rejected launches are logged at most once in this many ticks
+    private static final int REJECTION_LOG_TICKS = 20 * 10;
+
+    private static MissileGovernor instance = null;
+
+    // the levels are entered when the MSPT is above these fractions of the target MSPT
+    private final double[] levelThresholds = {0.0D, 0.8D, 0.9D, 1.0D};
+    private final double targetMspt;
+    private final int maxMissiles;
+    private final int maxMissilesPerConnection;
+
+    private Level level = Level.NORMAL;
+    private int ticksSinceLevelChange = 0;
+
+    // launches rejected since the last time they were logged, by reason
+    private int rejectedOverloaded = 0;
+    private int rejectedMaxMissiles = 0;
+    private int rejectedMaxMissilesPerConnection = 0;
+    private int ticksSinceRejectionLog = 0;
+
+    private long tickStartNanos;
+    private int resumesThisTick = 0;
+    private long missileTickNanos = 0;
+    // exponential moving averages in milliseconds
+    private double mspt = 0.0D;
+    private double missileMspt = 0.0D;
+
+    // number of flying missiles for each connection id
+    private final Map<Integer, Integer> activeMissiles = new ConcurrentHashMap<Integer, Integer>();
+
+    private MissileGovernor() {
+        this.targetMspt = getEnvDouble("MC_MISSILE_TARGET_MSPT", 45.0D);
+        this.maxMissiles = getEnvInt("MC_MISSILE_MAX_MISSILES", 500);
+        this.maxMissilesPerConnection = getEnvInt("MC_MISSILE_MAX_MISSILES_PER_CONNECTION", 100);
+        LOGGER.info(
+                "missile governor targets {} mspt, at most {} missiles, {} per connection id",
+                this.targetMspt,
+                this.maxMissiles,
+                this.maxMissilesPerConnection);
+    }
+
+    public static MissileGovernor getInstance() {
+        if (instance == null) {
+            instance = new MissileGovernor();
+        }
+        return instance;
+    }
+
+    public void onStartServerTick() {
+        this.tickStartNanos = System.nanoTime();
+        this.missileTickNanos = 0;
+        this.resumesThisTick = 0;
+    }
+
+    public void onEndServerTick() {
+        double tickMillis = (System.nanoTime() - this.tickStartNanos) / 1.0E6D;
+        this.mspt += EMA_ALPHA * (tickMillis - this.mspt);
+        this.missileMspt += EMA_ALPHA * (this.missileTickNanos / 1.0E6D - this.missileMspt);
+        logRejections();
+
+        ++this.ticksSinceLevelChange;
+        if (this.ticksSinceLevelChange < LEVEL_CHANGE_TICKS) {
+            return;
+        }
+        int newLevel = this.level.ordinal();
+        if (newLevel + 1 < this.levelThresholds.length
+                && this.mspt > this.levelThresholds[newLevel + 1] * this.targetMspt
+                && this.missileMspt >= MIN_MISSILE_SHARE * this.mspt) {
+            ++newLevel;
+        } else if (newLevel > 0 && this.mspt < this.levelThresholds[newLevel] * this.targetMspt) {
+            --newLevel;
+        }
+        if (newLevel != this.level.ordinal()) {
+            this.level = Level.values()[newLevel];
+            this.ticksSinceLevelChange = 0;
+            LOGGER.warn(
+                    "missile governor changed level to {}, mspt: {}, missile mspt: {}",
+                    this.level,
+                    this.mspt,
+                    this.missileMspt);
+        }
+    }
+
+    public void addMissileTickCost(long nanos) {
+        this.missileTickNanos += nanos;
+    }
+
+    // Return true and count the missile as flying when it may launch.
+    public boolean admitLaunch(int connectionId) {
+        // the rejections are logged together, see logRejections
+        if (this.level.compareTo(Level.LAUNCHES_REJECTED) >= 0) {
+            ++this.rejectedOverloaded;
+            return false;
+        }
+        int total = this.activeMissiles.values().stream().mapToInt(Integer::intValue).sum();
+        if (total >= this.maxMissiles) {
+            ++this.rejectedMaxMissiles;
+            return false;
+        }
+        int connectionCount = this.activeMissiles.getOrDefault(connectionId, 0);
+        if (connectionCount >= this.maxMissilesPerConnection) {
+            ++this.rejectedMaxMissilesPerConnection;
+            return false;
+        }
+        this.activeMissiles.put(connectionId, connectionCount + 1);
+        return true;
+    }
+
+    // An overloaded server would reject every rocket of a salvo, so the rejections are counted and
+    // logged once in a while instead of one by one.
+    private void logRejections() {
+        ++this.ticksSinceRejectionLog;
+        if (this.ticksSinceRejectionLog < REJECTION_LOG_TICKS) {
+            return;
+        }
+        if (this.rejectedOverloaded
+                        + this.rejectedMaxMissiles
+                        + this.rejectedMaxMissilesPerConnection
+                > 0) {
+            LOGGER.warn(
+                    "rejected missile launches in the last {} ticks: {} because the server is"
+                            + " overloaded, {} at the {} missile cap, {} at the {} missiles per"
+                            + " connection id cap",
+                    REJECTION_LOG_TICKS,
+                    this.rejectedOverloaded,
+                    this.rejectedMaxMissiles,
+                    this.maxMissiles,
+                    this.rejectedMaxMissilesPerConnection,
+                    this.maxMissilesPerConnection);
+        }
+        this.rejectedOverloaded = 0;
+        this.rejectedMaxMissiles = 0;
+        this.rejectedMaxMissilesPerConnection = 0;
+        this.ticksSinceRejectionLog = 0;
+    }
+
+    // Count a missile loaded from disk as flying.
+    // It was admitted when it launched, so it's never rejected.
+    public void onMissileRestored(int connectionId) {
+        this.activeMissiles.merge(connectionId, 1, Integer::sum);
+    }
+
+    // Return true when a missile loaded from disk may re-establish its guidance this tick.
+    // This keeps a chunk full of missiles from opening hundreds of streams in a single tick.
+    public boolean admitResume() {
+        if (this.resumesThisTick >= MAX_RESUMES_PER_TICK) {
+            return false;
+        }
+        ++this.resumesThisTick;
+        return true;
+    }
+
+    public void onMissileRemoved(int connectionId) {
+        this.activeMissiles.computeIfPresent(connectionId, (id, count) -> count - 1);
+    }
+
+    public boolean shouldUpdateSeeker(int tickCount) {
+        return this.level.compareTo(Level.REDUCED_SEEKER_RATE) < 0
+                || tickCount % SEEKER_INTERVAL == 0;
+    }
+
+    public boolean shouldSendState(int tickCount) {
+        return this.level.compareTo(Level.REDUCED_STATE_RATE) < 0
+                || tickCount % STATE_INTERVAL == 0;
+    }
+
+    public Level getLevel() {
+        return this.level;
+    }
+
+    public double getMspt() {
+        return this.mspt;
+    }
+
+    public double getMissileMspt() {
+        return this.missileMspt;
+    }
+
+    public int getActiveMissiles(int connectionId) {
+        return this.activeMissiles.getOrDefault(connectionId, 0);
+    }
+
+    // connection id -> number of flying missiles
+    public Map<Integer, Integer> getActiveMissiles() {
+        return new HashMap<Integer, Integer>(this.activeMissiles);
+    }
+
+    private static double getEnvDouble(String name, double defaultValue) {
+        String value = System.getenv(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    private static int getEnvInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
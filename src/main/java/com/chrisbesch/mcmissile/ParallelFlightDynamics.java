@@ -0,0 +1,127 @@
+package com.chrisbesch.mcmissile;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.server.world.ServerWorld;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+// This singleton computes the flight dynamics of all missiles in a world in parallel, before the
+// world ticks its entities.
+// The rotation noise, thrust and drag of a missile don't depend on any other missile, only moving
+// the missile and colliding does. So the missile's tick only has to move it with the precomputed
+// velocity.
+// This is optional, enable it with MC_MISSILE_PARALLEL_FLIGHT_DYNAMICS=true.
+public /* singleton */ class ParallelFlightDynamics {
+    private static final String MOD_ID = "mc-missile";
+    private static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+
+    // With fewer missiles, splitting the work costs more than it saves.
+    private static final int MIN_PARALLEL_MISSILES = 64;
+
+    private static ParallelFlightDynamics instance = null;
+
+    private boolean enabled;
+    // created when first enabled
+    private ForkJoinPool pool;
+
+    // the missiles flying in each world
+    // only accessed from the server thread
+    private final Map<ServerWorld, Set<MissileEntity>> missiles =
+            new HashMap<ServerWorld, Set<MissileEntity>>();
+
+    private ParallelFlightDynamics() {
+        var enabledStr = System.getenv("MC_MISSILE_PARALLEL_FLIGHT_DYNAMICS");
+        this.setEnabled(enabledStr != null && enabledStr.equals("true"));
+    }
+
+    public static ParallelFlightDynamics getInstance() {
+        if (instance == null) {
+            instance = new ParallelFlightDynamics();
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    // This can be changed at runtime, e.g. to compare both in the GameTests.
+    // Only missiles launched afterwards are computed in parallel.
+    public void setEnabled(boolean enabled) {
+        if (enabled && this.pool == null) {
+            // leave one core for the server thread
+            this.pool =
+                    new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        }
+        if (!enabled) {
+            this.missiles.clear();
+        }
+        this.enabled = enabled;
+        LOGGER.info("parallel flight dynamics enabled: {}", this.enabled);
+    }
+
+    public void addMissile(ServerWorld world, MissileEntity missile) {
+        if (!this.enabled) {
+            return;
+        }
+        var worldMissiles = this.missiles.get(world);
+        if (worldMissiles == null) {
+            worldMissiles = new LinkedHashSet<MissileEntity>();
+            this.missiles.put(world, worldMissiles);
+        }
+        worldMissiles.add(missile);
+    }
+
+    public void removeMissile(ServerWorld world, MissileEntity missile) {
+        var worldMissiles = this.missiles.get(world);
+        if (worldMissiles != null) {
+            worldMissiles.remove(missile);
+        }
+    }
+
+    // Call this at the start of each world tick.
+    public void tick(ServerWorld world) {
+        var worldMissiles = this.missiles.get(world);
+        if (worldMissiles == null || worldMissiles.isEmpty()) {
+            return;
+        }
+        // this is missile work, too, the governor has to see it
+        long startNanos = System.nanoTime();
+        try {
+            this.tick(world, worldMissiles);
+        } finally {
+            MissileGovernor.getInstance().addMissileTickCost(System.nanoTime() - startNanos);
+        }
+    }
+
+    private void tick(ServerWorld world, Set<MissileEntity> worldMissiles) {
+        // also forget missiles that have been unloaded
+        worldMissiles.removeIf(missile -> ((Entity) missile).isRemoved());
+
+        int serverTick = world.getServer().getTicks();
+        List<MissileEntity> batch = new ArrayList<MissileEntity>();
+        // copy, missiles might explode while reading their control input
+        for (var missile : new ArrayList<MissileEntity>(worldMissiles)) {
+            if (missile.prepareParallelTick(serverTick)) {
+                batch.add(missile);
+            }
+        }
+        if (batch.size() < MIN_PARALLEL_MISSILES) {
+            batch.forEach(MissileEntity::computeParallelTick);
+            return;
+        }
+        // parallelStream uses the pool it is started in
+        this.pool
+                .submit(() -> batch.parallelStream().forEach(MissileEntity::computeParallelTick))
+                .join();
+    }
+}
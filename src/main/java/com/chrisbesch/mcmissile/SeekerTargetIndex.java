@@ -0,0 +1,165 @@
+package com.chrisbesch.mcmissile;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.TypeFilter;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+// This singleton holds a spatial index of the entities around the seeker heads for each world.
+// All seeker heads search their targets in here instead of querying the world themselves.
+// The index is filled lazily, one cell at a time: a cell is only queried from the world when the
+// first seeker head searching in this tick needs it. Seeker heads searching the same area share
+// these queries, so the cost doesn't grow with the number of missiles locking on, and entities
+// far away from any seeker head are never looked at.
+// Each entity filter of the seeker heads has its own cells, which only hold the entities the
+// filter matches. Dropped items, experience orbs and projectiles never end up in the index of a
+// seeker head that can't lock onto them.
+// The index is cleared at the end of each tick so that it doesn't keep entities alive.
+// Only use this from the server thread.
+public /* singleton */ class SeekerTargetIndex {
+    // the index is a grid of cubes, each 2^CELL_SHIFT blocks wide
+    private static final int CELL_SHIFT = 6;
+    // Entities may move after their cell has been filled in this tick.
+    // Search a little further so that we still find them.
+    private static final double MOVEMENT_MARGIN = 8.0D;
+
+    private static SeekerTargetIndex instance = null;
+
+    private final Map<RegistryKey<World>, WorldIndex> worldIndices =
+            new HashMap<RegistryKey<World>, WorldIndex>();
+
+    private SeekerTargetIndex() {}
+
+    public static SeekerTargetIndex getInstance() {
+        if (instance == null) {
+            instance = new SeekerTargetIndex();
+        }
+        return instance;
+    }
+
+    public void onEndServerTick() {
+        this.worldIndices.clear();
+    }
+
+    // Return all entities matching the filter and predicate that are within range of the center.
+    public List<Entity> getTargets(
+            ServerWorld world,
+            TypeFilter<Entity, ?> filter,
+            Vec3d center,
+            double range,
+            Predicate<Entity> predicate) {
+        var worldIndex = this.getWorldIndex(world);
+
+        double searchRange = range + MOVEMENT_MARGIN;
+        int minCellX = MathHelper.floor(center.x - searchRange) >> CELL_SHIFT;
+        int maxCellX = MathHelper.floor(center.x + searchRange) >> CELL_SHIFT;
+        int minCellY = MathHelper.floor(center.y - searchRange) >> CELL_SHIFT;
+        int maxCellY = MathHelper.floor(center.y + searchRange) >> CELL_SHIFT;
+        int minCellZ = MathHelper.floor(center.z - searchRange) >> CELL_SHIFT;
+        int maxCellZ = MathHelper.floor(center.z + searchRange) >> CELL_SHIFT;
+        var filterIndex = worldIndex.getFilterIndex(filter);
+        List<Entity> targets = new ArrayList<Entity>();
+        for (int cellX = minCellX; cellX <= maxCellX; ++cellX) {
+            for (int cellY = minCellY; cellY <= maxCellY; ++cellY) {
+                for (int cellZ = minCellZ; cellZ <= maxCellZ; ++cellZ) {
+                    var cell = filterIndex.fill(world, filter, cellX, cellY, cellZ);
+                    for (Entity entity : cell) {
+                        if (!entity.isRemoved()
+                                && center.squaredDistanceTo(entity.getPos()) <= range * range
+                                && predicate.test(entity)) {
+                            targets.add(entity);
+                        }
+                    }
+                }
+            }
+        }
+        return targets;
+    }
+
+    private WorldIndex getWorldIndex(ServerWorld world) {
+        var worldIndex = this.worldIndices.get(world.getRegistryKey());
+        if (worldIndex == null) {
+            worldIndex = new WorldIndex();
+            this.worldIndices.put(world.getRegistryKey(), worldIndex);
+        }
+        // in case the end of the last tick has been missed
+        if (worldIndex.filledAtTime != world.getTime()) {
+            worldIndex.clear(world.getTime());
+        }
+        return worldIndex;
+    }
+
+    private static class WorldIndex {
+        private long filledAtTime = -1;
+        // The filters are compared by identity.
+        // Seeker heads share the cells when they use the same entity type or the same filter
+        // instance, see Hardware.
+        private final Map<TypeFilter<Entity, ?>, FilterIndex> filterIndices =
+                new HashMap<TypeFilter<Entity, ?>, FilterIndex>();
+
+        private void clear(long time) {
+            this.filterIndices.clear();
+            this.filledAtTime = time;
+        }
+
+        private FilterIndex getFilterIndex(TypeFilter<Entity, ?> filter) {
+            var filterIndex = this.filterIndices.get(filter);
+            if (filterIndex == null) {
+                filterIndex = new FilterIndex();
+                this.filterIndices.put(filter, filterIndex);
+            }
+            return filterIndex;
+        }
+    }
+
+    // the entities matching one filter
+    private static class FilterIndex {
+        // cell -> entities in that cell, only for the cells queried from the world in this tick
+        private final Map<Long, List<Entity>> cells = new HashMap<Long, List<Entity>>();
+
+        // Query the cell from the world unless that has been done in this tick.
+        // Return the entities in the cell.
+        private List<Entity> fill(
+                ServerWorld world, TypeFilter<Entity, ?> filter, int cellX, int cellY, int cellZ) {
+            long key = BlockPos.asLong(cellX, cellY, cellZ);
+            var cell = this.cells.get(key);
+            if (cell != null) {
+                return cell;
+            }
+            cell = new ArrayList<Entity>();
+            this.cells.put(key, cell);
+            int size = 1 << CELL_SHIFT;
+            Box box =
+                    new Box(
+                            cellX * size,
+                            cellY * size,
+                            cellZ * size,
+                            (cellX + 1) * size,
+                            (cellY + 1) * size,
+                            (cellZ + 1) * size);
+            for (Entity entity : world.getEntitiesByType(filter, box, e -> true)) {
+                // The bounding box might reach into the neighboring cells.
+                // Only add the entity to the cell its position is in.
+                if (BlockPos.asLong(
+                                MathHelper.floor(entity.getX()) >> CELL_SHIFT,
+                                MathHelper.floor(entity.getY()) >> CELL_SHIFT,
+                                MathHelper.floor(entity.getZ()) >> CELL_SHIFT)
+                        == key) {
+                    cell.add(entity);
+                }
+            }
+            return cell;
+        }
+    }
+}
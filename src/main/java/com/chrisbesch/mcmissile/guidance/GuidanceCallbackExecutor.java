@@ -0,0 +1,64 @@
+package com.chrisbesch.mcmissile.guidance;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs the gRPC callbacks of all guidance servers on a shared thread pool.
+// Each connection id gets its own sequential executor on top of that pool, so it can never occupy
+// more than one of the threads, no matter how many missiles it has in flight. A swarm of one
+// connection id only delays its own control inputs.
+// The time spent in the callbacks is accounted for each connection id.
+class GuidanceCallbackExecutor {
+    private static final ExecutorService sharedPool =
+            Executors.newFixedThreadPool(getThreadCount());
+    private static final Map<Integer, Executor> executors =
+            new ConcurrentHashMap<Integer, Executor>();
+    private static final Map<Integer, AtomicLong> callbackNanos =
+            new ConcurrentHashMap<Integer, AtomicLong>();
+
+    private GuidanceCallbackExecutor() {}
+
+    static Executor forConnection(int connectionId) {
+        return executors.computeIfAbsent(
+                connectionId,
+                id -> {
+                    var sequentialExecutor = MoreExecutors.newSequentialExecutor(sharedPool);
+                    var nanos = getCallbackNanosCounter(id);
+                    return command ->
+                            sequentialExecutor.execute(
+                                    () -> {
+                                        long start = System.nanoTime();
+                                        try {
+                                            command.run();
+                                        } finally {
+                                            nanos.addAndGet(System.nanoTime() - start);
+                                        }
+                                    });
+                });
+    }
+
+    // The calls still running on the old channel keep their executor.
+    static void removeConnection(int connectionId) {
+        executors.remove(connectionId);
+    }
+
+    // the total time spent in callbacks of this connection id
+    static long getCallbackNanos(int connectionId) {
+        return getCallbackNanosCounter(connectionId).get();
+    }
+
+    private static AtomicLong getCallbackNanosCounter(int connectionId) {
+        return callbackNanos.computeIfAbsent(connectionId, id -> new AtomicLong());
+    }
+
+    private static int getThreadCount() {
+        String threadsStr = System.getenv("MC_MISSILE_GUIDANCE_CALLBACK_THREADS");
+        return threadsStr == null ? 4 : Integer.parseInt(threadsStr);
+    }
+}
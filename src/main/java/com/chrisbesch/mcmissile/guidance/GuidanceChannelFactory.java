@@ -0,0 +1,147 @@
+package com.chrisbesch.mcmissile.guidance;
+
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.inprocess.InProcessChannelBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Creates the channels to the guidance and control servers.
+// By default a guidance server is dialed over TCP, its address is a prefix appended with the
+// player specified connection id.
+// The operator can choose another transport for each connection id with the
+// MC_MISSILE_GUIDANCE_TRANSPORTS environment variable,
+// e.g. "69=unix:/run/mc_missile/69.sock,420=inprocess:guidance420":
+// - unix:<path> uses a Unix domain socket, for guidance servers running on the same host
+// - inprocess:<name> uses a gRPC server with that name inside this JVM, for tests
+// - tcp:<host>:<port> uses TCP with an explicit address
+// Hedging is opt-in: a connection id with an entry in MC_MISSILE_GUIDANCE_HEDGE_TRANSPORTS (same
+// format) has a second replica of its guidance server, see GuidanceStubManager.
+// Players only choose the connection id, never the address.
+class GuidanceChannelFactory {
+    private static final String MOD_ID = "mc-missile";
+    private static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+
+    private static final String UNIX_TRANSPORT = "unix:";
+    private static final String IN_PROCESS_TRANSPORT = "inprocess:";
+    private static final String TCP_TRANSPORT = "tcp:";
+
+    // connection id -> transport, parsed once because hasHedgeReplica is called for each missile
+    private static final Map<Integer, String> transports =
+            parseTransports("MC_MISSILE_GUIDANCE_TRANSPORTS");
+    private static final Map<Integer, String> hedgeTransports =
+            parseTransports("MC_MISSILE_GUIDANCE_HEDGE_TRANSPORTS");
+
+    private GuidanceChannelFactory() {}
+
+    static ManagedChannel createChannel(int connectionId, int replica) {
+        return createChannelBuilder(connectionId, replica)
+                .executor(GuidanceCallbackExecutor.forConnection(connectionId))
+                .keepAliveTime(500, TimeUnit.MILLISECONDS)
+                .keepAliveTimeout(250, TimeUnit.MILLISECONDS)
+                .idleTimeout(1, TimeUnit.MINUTES)
+                .build();
+    }
+
+    // Throw when the channels of this connection id can't be created.
+    // The channels are created lazily, this lets a bad configuration fail when the connection id
+    // is added instead of when the first missile launches.
+    static void validateChannel(int connectionId) {
+        createChannelBuilder(connectionId, GuidanceStubManager.PRIMARY_REPLICA);
+        if (hasHedgeReplica(connectionId)) {
+            createChannelBuilder(connectionId, GuidanceStubManager.HEDGE_REPLICA);
+        }
+    }
+
+    private static ManagedChannelBuilder<?> createChannelBuilder(int connectionId, int replica) {
+        String transport =
+                replica == GuidanceStubManager.HEDGE_REPLICA
+                        ? hedgeTransports.get(connectionId)
+                        : transports.get(connectionId);
+        ManagedChannelBuilder<?> channelBuilder;
+        if (transport == null && replica == GuidanceStubManager.HEDGE_REPLICA) {
+            throw new java.lang.RuntimeException(
+                    "there is no hedge replica for guidance server " + connectionId);
+        } else if (transport == null) {
+            channelBuilder =
+                    Grpc.newChannelBuilder(
+                            getServerAddress(connectionId), InsecureChannelCredentials.create());
+        } else if (transport.startsWith(UNIX_TRANSPORT)) {
+            LOGGER.info(
+                    "using unix domain socket {} for guidance server {}", transport, connectionId);
+            // grpc-netty-shaded handles the unix scheme with its epoll transport
+            channelBuilder = Grpc.newChannelBuilder(transport, InsecureChannelCredentials.create());
+        } else if (transport.startsWith(TCP_TRANSPORT)) {
+            LOGGER.info("using tcp address {} for guidance server {}", transport, connectionId);
+            channelBuilder =
+                    Grpc.newChannelBuilder(
+                            transport.substring(TCP_TRANSPORT.length()),
+                            InsecureChannelCredentials.create());
+        } else if (transport.startsWith(IN_PROCESS_TRANSPORT)) {
+            LOGGER.info("using in-process guidance server {} for {}", transport, connectionId);
+            channelBuilder =
+                    InProcessChannelBuilder.forName(
+                            transport.substring(IN_PROCESS_TRANSPORT.length()));
+        } else {
+            throw new java.lang.RuntimeException(
+                    "unknown guidance transport '" + transport + "' for " + connectionId);
+        }
+        return channelBuilder;
+    }
+
+    static boolean hasHedgeReplica(int connectionId) {
+        return hedgeTransports.containsKey(connectionId);
+    }
+
+    // connection id -> transport
+    private static Map<Integer, String> parseTransports(String envName) {
+        Map<Integer, String> transports = new HashMap<Integer, String>();
+        String transportsRaw = System.getenv(envName);
+        if (transportsRaw == null || transportsRaw.isEmpty()) {
+            return transports;
+        }
+        for (String transportRaw : transportsRaw.split(",")) {
+            String[] parts = transportRaw.split("=", 2);
+            if (parts.length != 2) {
+                throw new java.lang.RuntimeException(
+                        envName
+                                + " entry '"
+                                + transportRaw
+                                + "' needs to look like <connection id>=<transport>");
+            }
+            transports.put(Integer.parseInt(parts[0]), parts[1]);
+        }
+        return transports;
+    }
+
+    private static String getServerAddress(int connectionId) {
+        String portStr = System.getenv("MC_MISSILE_GUIDANCE_PORT");
+        if (portStr == null) {
+            throw new java.lang.RuntimeException(
+                    "MC_MISSILE_GUIDANCE_PORT environment variable needs to be defined");
+        }
+        Integer port = Integer.parseInt(portStr);
+
+        var useLocalhost = System.getenv("MC_MISSILE_LOCALHOST_GUIDANCE_CONTROL");
+        if (useLocalhost != null && useLocalhost.equals("true")) {
+            LOGGER.warn("using localhost guidance server");
+            return "127.0.0.1:" + port;
+        }
+        String guidanceControlAddressPrefix =
+                System.getenv("MC_MISSILE_GUIDANCE_CONTROL_ADDRESS_PREFIX");
+        if (guidanceControlAddressPrefix == null) {
+            throw new java.lang.RuntimeException(
+                    "MC_MISSILE_GUIDANCE_CONTROL_ADDRESS_PREFIX environment variable needs to be"
+                            + " defined");
+        }
+        LOGGER.info("using {} prefix for guidance server", guidanceControlAddressPrefix);
+        return guidanceControlAddressPrefix + connectionId + ":" + port;
+    }
+}
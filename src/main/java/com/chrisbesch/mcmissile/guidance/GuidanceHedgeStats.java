@@ -0,0 +1,51 @@
+package com.chrisbesch.mcmissile.guidance;
+
+// How hedging pays off for a single connection id.
+// With hedging, every missile state is streamed to the primary and the hedge replica and the
+// control input that arrives first is used. The other one is a duplicate and dropped.
+// The bytes count the serialized protobuf messages, not the gRPC and transport overhead.
+public class GuidanceHedgeStats {
+    private final long[] wins = new long[GuidanceStubManager.REPLICAS];
+    private final long[] bytesSent = new long[GuidanceStubManager.REPLICAS];
+    private final long[] bytesReceived = new long[GuidanceStubManager.REPLICAS];
+    private long duplicates = 0;
+
+    // Call this when a control input arrives from a replica.
+    // accepted is false when a control input with the same or a newer id already arrived.
+    public synchronized void recordControlInput(
+            int replica, ControlInput controlInput, boolean accepted) {
+        this.bytesReceived[replica] += controlInput.getSerializedSize();
+        if (accepted) {
+            ++this.wins[replica];
+        } else {
+            ++this.duplicates;
+        }
+    }
+
+    public synchronized void recordMissileState(int replica, MissileState missileState) {
+        this.bytesSent[replica] += missileState.getSerializedSize();
+    }
+
+    // number of control inputs from this replica that arrived first
+    public synchronized long getWins(int replica) {
+        return this.wins[replica];
+    }
+
+    public synchronized long getDuplicates() {
+        return this.duplicates;
+    }
+
+    public synchronized long getBytesSent(int replica) {
+        return this.bytesSent[replica];
+    }
+
+    public synchronized long getBytesReceived(int replica) {
+        return this.bytesReceived[replica];
+    }
+
+    // the bandwidth hedging costs on top of only using the primary replica
+    public synchronized long getHedgeBytes() {
+        return this.bytesSent[GuidanceStubManager.HEDGE_REPLICA]
+                + this.bytesReceived[GuidanceStubManager.HEDGE_REPLICA];
+    }
+}
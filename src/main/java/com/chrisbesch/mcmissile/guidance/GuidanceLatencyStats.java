@@ -0,0 +1,101 @@
+package com.chrisbesch.mcmissile.guidance;
+
+import java.time.Instant;
+
+// The latency of a single guidance and control server connection.
+// Computed from the timestamps the guidance server echos in its control inputs.
+// All values are exponential moving averages in milliseconds.
+public class GuidanceLatencyStats {
+    // how much the recent history is smoothed, the lower the smoother
+    private static final double EMA_ALPHA = 0.05D;
+
+    private double roundTripMillis = 0.0D;
+    private double processingMillis = 0.0D;
+    private double tickPhaseMillis = 0.0D;
+    private double clockOffsetMillis = 0.0D;
+    // number of control inputs with timestamps
+    private long samples = 0;
+    // number of control inputs applied
+    private long consumptions = 0;
+
+    private LatencyReport report = LatencyReport.getDefaultInstance();
+
+    // Call this when a control input arrives.
+    public synchronized void recordControlInput(ControlInput controlInput, long arrivedAtMicros) {
+        if (controlInput.getStateSentAtMicros() == 0) {
+            // the guidance server doesn't echo the timestamps
+            return;
+        }
+        double totalMillis = (arrivedAtMicros - controlInput.getStateSentAtMicros()) / 1000.0D;
+        double processingMillis = 0.0D;
+        if (controlInput.getReceivedAtMicros() != 0 && controlInput.getSentAtMicros() != 0) {
+            processingMillis =
+                    (controlInput.getSentAtMicros() - controlInput.getReceivedAtMicros()) / 1000.0D;
+            // like NTP
+            double clockOffsetMillis =
+                    ((controlInput.getReceivedAtMicros() - controlInput.getStateSentAtMicros())
+                                    + (controlInput.getSentAtMicros() - arrivedAtMicros))
+                            / 2000.0D;
+            this.clockOffsetMillis =
+                    average(this.clockOffsetMillis, clockOffsetMillis, this.samples);
+        }
+        this.roundTripMillis =
+                average(this.roundTripMillis, totalMillis - processingMillis, this.samples);
+        this.processingMillis = average(this.processingMillis, processingMillis, this.samples);
+        ++this.samples;
+        this.updateReport();
+    }
+
+    // Call this when a tick applies a control input for the first time.
+    public synchronized void recordConsumption(long arrivedAtMicros, long consumedAtMicros) {
+        this.tickPhaseMillis =
+                average(
+                        this.tickPhaseMillis,
+                        (consumedAtMicros - arrivedAtMicros) / 1000.0D,
+                        this.consumptions);
+        ++this.consumptions;
+        this.updateReport();
+    }
+
+    // Forget all measurements, e.g. between two GameTest scenarios.
+    public synchronized void reset() {
+        this.roundTripMillis = 0.0D;
+        this.processingMillis = 0.0D;
+        this.tickPhaseMillis = 0.0D;
+        this.clockOffsetMillis = 0.0D;
+        this.samples = 0;
+        this.consumptions = 0;
+        this.updateReport();
+    }
+
+    public synchronized LatencyReport getReport() {
+        return this.report;
+    }
+
+    public synchronized long getSamples() {
+        return this.samples;
+    }
+
+    public static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1000000L + now.getNano() / 1000L;
+    }
+
+    private static double average(double average, double sample, long previousSamples) {
+        // start with the first sample instead of 0
+        if (previousSamples == 0) {
+            return sample;
+        }
+        return average + EMA_ALPHA * (sample - average);
+    }
+
+    private void updateReport() {
+        this.report =
+                LatencyReport.newBuilder()
+                        .setRoundTripMillis(this.roundTripMillis)
+                        .setProcessingMillis(this.processingMillis)
+                        .setTickPhaseMillis(this.tickPhaseMillis)
+                        .setClockOffsetMillis(this.clockOffsetMillis)
+                        .build();
+    }
+}
@@ -0,0 +1,29 @@
+package com.chrisbesch.mcmissile.guidance;
+
+import java.util.Collection;
+
+// A guidance and control implementation that runs inside the Minecraft server JVM.
+// This is meant for server owned AI missiles and trusted built-in autopilots.
+// Providers are discovered through the "mc_missile:guidance" Fabric entrypoint and are bound to
+// the connection ids they return.
+// Missiles on those connection ids don't use the gRPC guidance server at all: the provider is
+// called synchronously on the server thread when the missile reads its control input after it
+// has sent a new missile state. In between, the last control input is applied again, like with a
+// gRPC guidance server.
+// Player owned connection ids should keep using external gRPC guidance servers.
+public interface GuidanceProvider {
+    // The connection ids this provider is responsible for.
+    // Each connection id can only be bound to a single provider.
+    Collection<Integer> getConnectionIds();
+
+    // Called on the server thread with the latest missile state the mod created for this missile.
+    // This works like a gRPC guidance server answering that missile state.
+    // The first call for a missile is with the initial missile state, only the control input
+    // returned there is allowed to contain a hardware config.
+    // Return null when there is no control input.
+    ControlInput getGuidance(MissileState missileState);
+
+    // Called when the missile is destroyed or suspended.
+    // A suspended missile later continues with a resumed missile state and the same missile id.
+    default void endGuidance(MissileState missileState) {}
+}
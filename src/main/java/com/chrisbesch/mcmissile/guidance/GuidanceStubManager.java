@@ -2,8 +2,6 @@ package com.chrisbesch.mcmissile.guidance;
 
 import com.chrisbesch.mcmissile.guidance.GuidanceGrpc.GuidanceStub;
 
-import io.grpc.Grpc;
-import io.grpc.InsecureChannelCredentials;
 import io.grpc.ManagedChannel;
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
@@ -11,29 +9,65 @@ import io.grpc.stub.StreamObserver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 // This singleton handles connections to the guidance and control server.
 // These will be reused.
-// The address of the server is a prefix appended with the player specified connection id.
+// Connection ids can be added and removed at runtime. The channel of a connection id is only
+// created when it is first used, either by the health check in the background or by a missile.
+// The address of the server is defined by the operator for each connection id, see
+// GuidanceChannelFactory.
 // This is done for security reasons as letting players define the entire address is unsafe.
 // All calls include the connection id so that the manager knows what server to connect to.
+// Connection ids bound to an in-JVM GuidanceProvider don't use gRPC at all.
+// A connection id can have a second hedge replica of its guidance server. Then every missile
+// state is streamed to both replicas and whichever control input arrives first is used.
+// Duplicates are resolved by the control input id, so both replicas have to number their control
+// inputs the same way, e.g. with the time of the missile state they answer.
 public /* singleton */ class GuidanceStubManager {
     // in seconds
     static final int HEALTH_CHECK_SCHEDULE = 30;
 
+    public static final int PRIMARY_REPLICA = 0;
+    public static final int HEDGE_REPLICA = 1;
+    public static final int REPLICAS = 2;
+
     private static final String MOD_ID = "mc-missile";
     private static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
 
     private static GuidanceStubManager instance = null;
 
+    // all connection ids that have a guidance control server
+    private Set<Integer> connectionIds = ConcurrentHashMap.newKeySet();
     // one stub for each guidance control server connection
+    // created lazily
     private Map<Integer, GuidanceStub> stubs = new ConcurrentHashMap<Integer, GuidanceStub>();
+    private Map<Integer, ManagedChannel> channels =
+            new ConcurrentHashMap<Integer, ManagedChannel>();
+    // the same for the connection ids with a hedge replica
+    private Map<Integer, GuidanceStub> hedgeStubs = new ConcurrentHashMap<Integer, GuidanceStub>();
+    private Map<Integer, ManagedChannel> hedgeChannels =
+            new ConcurrentHashMap<Integer, ManagedChannel>();
+    private Map<Integer, ScheduledFuture<?>> healthChecks =
+            new ConcurrentHashMap<Integer, ScheduledFuture<?>>();
+    // one provider for each connection id that is guided inside the JVM
+    private Map<Integer, GuidanceProvider> providers =
+            new ConcurrentHashMap<Integer, GuidanceProvider>();
+    // one entry for each guidance control server connection
+    private Map<Integer, GuidanceLatencyStats> latencyStats =
+            new ConcurrentHashMap<Integer, GuidanceLatencyStats>();
+    private Map<Integer, GuidanceHedgeStats> hedgeStats =
+            new ConcurrentHashMap<Integer, GuidanceHedgeStats>();
 
     // one entry for each flying missile
     // the control input that was received last
@@ -42,12 +76,22 @@ public /* singleton */ class GuidanceStubManager {
     // the last id of the control input consumed by the mod
     private Map<Missile, Integer> latestConsumedControlInputIds =
             new ConcurrentHashMap<Missile, Integer>();
+    // when the control input that was received last arrived, in microseconds since the unix epoch
+    private Map<Missile, Long> latestControlInputArrivals = new ConcurrentHashMap<Missile, Long>();
     // latched when the connection is finished and can be closed
     private Map<Missile, CountDownLatch> finishLatches =
             new ConcurrentHashMap<Missile, CountDownLatch>();
-    // the stream the missile states are sent to
-    private Map<Missile, StreamObserver<MissileState>> missileStateObservers =
-            new ConcurrentHashMap<Missile, StreamObserver<MissileState>>();
+    // the streams the missile states are sent to, one for each replica
+    private Map<Missile, List<StreamObserver<MissileState>>> missileStateObservers =
+            new ConcurrentHashMap<Missile, List<StreamObserver<MissileState>>>();
+
+    // one entry for each flying missile guided by a provider
+    // the missile state that was sent last
+    private Map<Missile, MissileState> latestMissileStates =
+            new ConcurrentHashMap<Missile, MissileState>();
+    // the control input the provider returned last
+    private Map<Missile, ControlInput> latestProviderControlInputs =
+            new ConcurrentHashMap<Missile, ControlInput>();
 
     private final ScheduledExecutorService helperExecutor = Executors.newScheduledThreadPool(1);
 
@@ -60,61 +104,121 @@ public /* singleton */ class GuidanceStubManager {
         return instance;
     }
 
-    public void establishGuidanceConnection(MissileState initialMissileState) {
+    // Returns false when the connection id has been removed, the missile has no guidance then.
+    public boolean establishGuidanceConnection(MissileState initialMissileState) {
         int connectionId = initialMissileState.getMissile().getConnectionId();
-        // async stub
-        GuidanceStub stub = this.stubs.get(connectionId);
+        if (this.providers.get(connectionId) != null) {
+            // the provider is called once the missile reads its first control input
+            this.latestMissileStates.put(initialMissileState.getMissile(), initialMissileState);
+            return true;
+        }
+        // async stubs
+        GuidanceStub stub = this.getStub(connectionId, PRIMARY_REPLICA);
         if (stub == null) {
             LOGGER.warn("there is no stub with connectionId {}", connectionId);
-            return;
+            return false;
         }
-        this.finishLatches.put(initialMissileState.getMissile(), new CountDownLatch(1));
-
-        StreamObserver<ControlInput> controlInputObserver =
-                new StreamObserver<ControlInput>() {
-                    @Override
-                    public void onNext(ControlInput controlInput) {
-                        LOGGER.info(
-                                "{}: received control input id: {}",
-                                initialMissileState.getMissile().getId(),
-                                controlInput.getId());
-                        GuidanceStubManager.getInstance()
-                                .latestControlInputs
-                                .put(initialMissileState.getMissile(), controlInput);
-                    }
-
-                    @Override
-                    public void onError(Throwable t) {
-                        LOGGER.error(
-                                "{}: grpc error: {}",
-                                initialMissileState.getMissile().getId(),
-                                Status.fromThrowable(t));
-                        GuidanceStubManager.getInstance()
-                                .finishLatches
-                                .get(initialMissileState.getMissile())
-                                .countDown();
-                    }
-
-                    @Override
-                    public void onCompleted() {
-                        LOGGER.info(
-                                "{}: completed grpc connection",
-                                initialMissileState.getMissile().getId());
-                        GuidanceStubManager.getInstance()
-                                .finishLatches
-                                .get(initialMissileState.getMissile())
-                                .countDown();
-                    }
-                };
-        this.missileStateObservers.put(
-                initialMissileState.getMissile(), stub.getGuidance(controlInputObserver));
+        GuidanceStub hedgeStub = this.getStub(connectionId, HEDGE_REPLICA);
+        boolean hedged = hedgeStub != null;
+        // a resumed missile starts a new stream, forget what the previous stream sent
+        this.latestControlInputs.remove(initialMissileState.getMissile());
+        this.latestConsumedControlInputIds.remove(initialMissileState.getMissile());
+        this.latestControlInputArrivals.remove(initialMissileState.getMissile());
+        var finishLatch = new CountDownLatch(hedged ? REPLICAS : 1);
+        this.finishLatches.put(initialMissileState.getMissile(), finishLatch);
+
+        List<StreamObserver<MissileState>> observers =
+                new ArrayList<StreamObserver<MissileState>>();
+        observers.add(
+                stub.getGuidance(
+                        this.createControlInputObserver(
+                                initialMissileState.getMissile(),
+                                PRIMARY_REPLICA,
+                                hedged,
+                                finishLatch)));
+        if (hedged) {
+            observers.add(
+                    hedgeStub.getGuidance(
+                            this.createControlInputObserver(
+                                    initialMissileState.getMissile(),
+                                    HEDGE_REPLICA,
+                                    hedged,
+                                    finishLatch)));
+        }
+        this.missileStateObservers.put(initialMissileState.getMissile(), observers);
 
         this.sendMissileState(initialMissileState);
+        return true;
+    }
+
+    private StreamObserver<ControlInput> createControlInputObserver(
+            Missile missile, int replica, boolean hedged, CountDownLatch finishLatch) {
+        int connectionId = missile.getConnectionId();
+        return new StreamObserver<ControlInput>() {
+            @Override
+            public void onNext(ControlInput controlInput) {
+                long arrivedAtMicros = GuidanceLatencyStats.nowMicros();
+                LOGGER.debug(
+                        "{}: received control input id: {} from replica {}",
+                        missile.getId(),
+                        controlInput.getId(),
+                        replica);
+                var manager = GuidanceStubManager.getInstance();
+                // with hedging, only the first control input with each id is used
+                var latestControlInput =
+                        manager.latestControlInputs.compute(
+                                missile,
+                                (m, previous) -> {
+                                    if (hedged
+                                            && previous != null
+                                            && controlInput.getId() <= previous.getId()) {
+                                        return previous;
+                                    }
+                                    manager.latestControlInputArrivals.put(m, arrivedAtMicros);
+                                    return controlInput;
+                                });
+                boolean accepted = latestControlInput == controlInput;
+                if (hedged) {
+                    manager.getHedgeStats(connectionId)
+                            .recordControlInput(replica, controlInput, accepted);
+                }
+                if (accepted) {
+                    manager.getLatencyStats(connectionId)
+                            .recordControlInput(controlInput, arrivedAtMicros);
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                LOGGER.error(
+                        "{}: grpc error from replica {}: {}",
+                        missile.getId(),
+                        replica,
+                        Status.fromThrowable(t));
+                finishLatch.countDown();
+            }
+
+            @Override
+            public void onCompleted() {
+                LOGGER.debug(
+                        "{}: completed grpc connection of replica {}", missile.getId(), replica);
+                finishLatch.countDown();
+            }
+        };
     }
 
     // When the guidance connection hasn't been created yet, this doesn't do anything.
+    // The missile state has to be destroyed or suspended.
     public void endGuidanceConnection(MissileState missileState) {
-        assert missileState.getDestroyed();
+        assert missileState.getDestroyed() || missileState.getSuspended();
+
+        var provider = this.providers.get(missileState.getMissile().getConnectionId());
+        if (provider != null) {
+            TelemetryServer.getInstance().publishState(missileState);
+            this.onMissileRemoved(missileState.getMissile());
+            provider.endGuidance(missileState);
+            return;
+        }
 
         if (this.missileStateObservers.get(missileState.getMissile()) == null) {
             LOGGER.warn(
@@ -124,16 +228,16 @@ public /* singleton */ class GuidanceStubManager {
         }
 
         this.sendMissileState(missileState);
-        this.missileStateObservers.get(missileState.getMissile()).onCompleted();
-        this.missileStateObservers.remove(missileState.getMissile());
+        for (var observer : this.missileStateObservers.remove(missileState.getMissile())) {
+            observer.onCompleted();
+        }
 
         // do cleanup in background
+        var finishLatch = this.finishLatches.get(missileState.getMissile());
         this.helperExecutor.submit(
                 () -> {
                     try {
-                        if (!this.finishLatches
-                                .get(missileState.getMissile())
-                                .await(1, TimeUnit.MINUTES)) {
+                        if (!finishLatch.await(1, TimeUnit.MINUTES)) {
                             LOGGER.warn(
                                     "{}: getGuidance grpc can not finish within 1 minute",
                                     missileState.getMissile().getId());
@@ -144,9 +248,12 @@ public /* singleton */ class GuidanceStubManager {
                                 missileState.getMissile().getId(),
                                 e.getMessage());
                     }
-                    this.latestControlInputs.remove(missileState.getMissile());
-                    this.latestConsumedControlInputIds.remove(missileState.getMissile());
-                    this.finishLatches.remove(missileState.getMissile());
+                    // a suspended missile might have resumed with a new stream in the meantime
+                    if (this.finishLatches.remove(missileState.getMissile(), finishLatch)) {
+                        this.latestControlInputs.remove(missileState.getMissile());
+                        this.latestConsumedControlInputIds.remove(missileState.getMissile());
+                        this.latestControlInputArrivals.remove(missileState.getMissile());
+                    }
                     LOGGER.info(
                             "{}: completed shutdown of getGuidance grpc in helper thread",
                             missileState.getMissile().getId());
@@ -154,7 +261,33 @@ public /* singleton */ class GuidanceStubManager {
     }
 
     // return null when the server didn't send anything
-    public ControlInput consumeLatestControlInput(Missile missile) {
+    // expectNew is false when the guidance server wasn't sent a missile state last tick, then
+    // consuming the same control input again is expected.
+    public ControlInput consumeLatestControlInput(Missile missile, boolean expectNew) {
+        var provider = this.providers.get(missile.getConnectionId());
+        if (provider != null) {
+            var missileState = this.latestMissileStates.get(missile);
+            if (missileState == null) {
+                LOGGER.warn(
+                        "{}: there is no missile state for the guidance provider", missile.getId());
+                return null;
+            }
+            // The provider already answered this missile state, keep applying that answer.
+            // This way providers are only called as often as missile states are sent.
+            var latestProviderControlInput = this.latestProviderControlInputs.get(missile);
+            if (!expectNew && latestProviderControlInput != null) {
+                return latestProviderControlInput;
+            }
+            // the provider answers synchronously, so the control input can never be stale
+            var controlInput = provider.getGuidance(missileState);
+            if (controlInput == null) {
+                this.latestProviderControlInputs.remove(missile);
+            } else {
+                this.latestProviderControlInputs.put(missile, controlInput);
+            }
+            return controlInput;
+        }
+
         var consumingControlInput = this.latestControlInputs.get(missile);
         var consumingControlInputId =
                 consumingControlInput == null ? -1 : consumingControlInput.getId();
@@ -164,6 +297,10 @@ public /* singleton */ class GuidanceStubManager {
             latestConsumedControlInputId = -1;
         }
         if (consumingControlInputId <= latestConsumedControlInputId) {
+            if (!expectNew) {
+                // keep applying the last turn
+                return consumingControlInput;
+            }
             LOGGER.warn(
                     "{}: consuming the same control input again, the guidance control server {} is"
                             + " lagging behind, latest consumed id {}, now consuming id {}",
@@ -171,52 +308,203 @@ public /* singleton */ class GuidanceStubManager {
                     missile.getConnectionId(),
                     latestConsumedControlInputId,
                     consumingControlInputId);
+        } else if (consumingControlInput != null) {
+            // applied for the first time
+            var arrivedAtMicros = this.latestControlInputArrivals.get(missile);
+            if (arrivedAtMicros != null) {
+                this.getLatencyStats(missile.getConnectionId())
+                        .recordConsumption(arrivedAtMicros, GuidanceLatencyStats.nowMicros());
+            }
         }
         this.latestConsumedControlInputIds.put(missile, consumingControlInputId);
         return consumingControlInput;
     }
 
+    // Call this whenever a missile stops flying, also when its guidance connection has never been
+    // established.
+    // This only forgets what is kept for guidance providers, gRPC streams clean up after
+    // themselves, see endGuidanceConnection.
+    public void onMissileRemoved(Missile missile) {
+        this.latestMissileStates.remove(missile);
+        this.latestProviderControlInputs.remove(missile);
+    }
+
     public void sendMissileState(MissileState missileState) {
+        TelemetryServer.getInstance().publishState(missileState);
+        if (this.providers.get(missileState.getMissile().getConnectionId()) != null) {
+            this.latestMissileStates.put(missileState.getMissile(), missileState);
+            return;
+        }
         // TODO: remove
-        LOGGER.info(
+        LOGGER.debug(
                 "{} {} {}",
                 this.missileStateObservers.size(),
                 this.finishLatches.size(),
                 this.latestControlInputs.size());
-        LOGGER.info(
+        LOGGER.debug(
                 "time: {} pitch: {} yaw: {}",
                 missileState.getTime(),
                 missileState.getPitch(),
                 missileState.getYaw());
-        LOGGER.info("{}: sending missile state", missileState.getMissile().getId());
-        try {
-            this.missileStateObservers.get(missileState.getMissile()).onNext(missileState);
-        } catch (RuntimeException e) {
-            this.missileStateObservers.get(missileState.getMissile()).onError(e);
-            LOGGER.error(
-                    "{}: sendMissileState grpc error: {}",
-                    missileState.getMissile().getId(),
-                    e.getMessage());
+        LOGGER.debug("{}: sending missile state", missileState.getMissile().getId());
+        var observers = this.missileStateObservers.get(missileState.getMissile());
+        if (observers == null) {
+            LOGGER.warn(
+                    "{}: trying to send missile state without guidance connection",
+                    missileState.getMissile().getId());
+            return;
+        }
+        for (int replica = 0; replica < observers.size(); ++replica) {
+            var observer = observers.get(replica);
+            try {
+                observer.onNext(missileState);
+            } catch (RuntimeException e) {
+                observer.onError(e);
+                LOGGER.error(
+                        "{}: sendMissileState grpc error for replica {}: {}",
+                        missileState.getMissile().getId(),
+                        replica,
+                        e.getMessage());
+            }
+            if (observers.size() > 1) {
+                this.getHedgeStats(missileState.getMissile().getConnectionId())
+                        .recordMissileState(replica, missileState);
+            }
         }
     }
 
-    public void createStub(int connectionId) {
-        assert this.stubs.get(connectionId) == null;
-        LOGGER.info("creating new stub for server {}", connectionId);
-        ManagedChannel channel =
-                Grpc.newChannelBuilder(
-                                getServerAddress(connectionId), InsecureChannelCredentials.create())
-                        .keepAliveTime(500, TimeUnit.MILLISECONDS)
-                        .keepAliveTimeout(250, TimeUnit.MILLISECONDS)
-                        .idleTimeout(1, TimeUnit.MINUTES)
-                        .build();
-        GuidanceStub stub = GuidanceGrpc.newStub(channel);
-        this.stubs.put(connectionId, stub);
+    // This doesn't block, the channel is created in the background.
+    // Throws when the transport of the connection id is misconfigured.
+    public void addConnection(int connectionId) {
+        if (this.connectionIds.contains(connectionId)) {
+            LOGGER.warn("connection id {} has already been added", connectionId);
+            return;
+        }
+        GuidanceChannelFactory.validateChannel(connectionId);
+        if (!this.connectionIds.add(connectionId)) {
+            LOGGER.warn("connection id {} has already been added", connectionId);
+            return;
+        }
+        LOGGER.info("adding guidance server {}", connectionId);
         initializeHealthCheck(connectionId);
     }
 
+    // Missiles in flight keep their guidance until they are destroyed.
+    public void removeConnection(int connectionId) {
+        if (!this.connectionIds.remove(connectionId)) {
+            LOGGER.warn("connection id {} doesn't exist", connectionId);
+            return;
+        }
+        LOGGER.info("removing guidance server {}", connectionId);
+        var healthCheck = this.healthChecks.remove(connectionId);
+        if (healthCheck != null) {
+            healthCheck.cancel(false);
+        }
+        this.stubs.remove(connectionId);
+        this.hedgeStubs.remove(connectionId);
+        for (var channel :
+                new ManagedChannel[] {
+                    this.channels.remove(connectionId), this.hedgeChannels.remove(connectionId)
+                }) {
+            if (channel != null) {
+                // the running calls are allowed to finish
+                channel.shutdown();
+            }
+        }
+        GuidanceCallbackExecutor.removeConnection(connectionId);
+    }
+
+    public Set<Integer> getConnectionIds() {
+        return new TreeSet<Integer>(this.connectionIds);
+    }
+
+    // Create the stub on first use.
+    // return null when the connection id doesn't exist or doesn't have that replica
+    private GuidanceStub getStub(int connectionId, int replica) {
+        if (!this.connectionIds.contains(connectionId)) {
+            return null;
+        }
+        if (replica == HEDGE_REPLICA && !GuidanceChannelFactory.hasHedgeReplica(connectionId)) {
+            return null;
+        }
+        var stubs = replica == HEDGE_REPLICA ? this.hedgeStubs : this.stubs;
+        var channels = replica == HEDGE_REPLICA ? this.hedgeChannels : this.channels;
+        return stubs.computeIfAbsent(
+                connectionId,
+                id -> {
+                    // the connection id might have been removed in the meantime
+                    // removeConnection waits for this to finish before it closes the channel
+                    if (!this.connectionIds.contains(id)) {
+                        return null;
+                    }
+                    LOGGER.info("creating new stub for server {} replica {}", id, replica);
+                    ManagedChannel channel = GuidanceChannelFactory.createChannel(id, replica);
+                    channels.put(id, channel);
+                    return GuidanceGrpc.newStub(channel);
+                });
+    }
+
+    // Add the latency measurements to a missile state that is about to be sent.
+    public void stampMissileState(MissileState.Builder missileStateBuilder) {
+        var missile = missileStateBuilder.getMissile();
+        var latestConsumedControlInputId = this.latestConsumedControlInputIds.get(missile);
+        missileStateBuilder
+                .setSentAtMicros(GuidanceLatencyStats.nowMicros())
+                .setLastConsumedControlInputId(
+                        latestConsumedControlInputId == null ? -1 : latestConsumedControlInputId)
+                .setLatency(this.getLatencyStats(missile.getConnectionId()).getReport());
+    }
+
+    public GuidanceLatencyStats getLatencyStats(int connectionId) {
+        return this.latencyStats.computeIfAbsent(connectionId, id -> new GuidanceLatencyStats());
+    }
+
+    public GuidanceHedgeStats getHedgeStats(int connectionId) {
+        return this.hedgeStats.computeIfAbsent(connectionId, id -> new GuidanceHedgeStats());
+    }
+
+    // the total time the gRPC callbacks of this connection id took
+    public long getCallbackNanos(int connectionId) {
+        return GuidanceCallbackExecutor.getCallbackNanos(connectionId);
+    }
+
+    public boolean isHedged(int connectionId) {
+        return this.hasStub(connectionId) && GuidanceChannelFactory.hasHedgeReplica(connectionId);
+    }
+
     public boolean hasStub(int connectionId) {
-        return this.stubs.get(connectionId) != null;
+        return this.connectionIds.contains(connectionId);
+    }
+
+    public void registerProvider(GuidanceProvider provider) {
+        for (int connectionId : provider.getConnectionIds()) {
+            if (this.providers.get(connectionId) != null) {
+                throw new java.lang.RuntimeException(
+                        "connection id "
+                                + connectionId
+                                + " is bound to multiple guidance providers");
+            }
+            if (this.hasStub(connectionId)) {
+                LOGGER.warn(
+                        "guidance provider {} overrides the guidance server {}",
+                        provider.getClass().getName(),
+                        connectionId);
+            }
+            LOGGER.info(
+                    "binding guidance provider {} to connection id {}",
+                    provider.getClass().getName(),
+                    connectionId);
+            this.providers.put(connectionId, provider);
+        }
+    }
+
+    public boolean hasProvider(int connectionId) {
+        return this.providers.get(connectionId) != null;
+    }
+
+    // true when missiles with this connection id can be guided
+    public boolean hasGuidance(int connectionId) {
+        return this.hasProvider(connectionId) || this.hasStub(connectionId);
     }
 
     // The health check is needed because grpc is lazy and doesn't actually
@@ -224,57 +512,84 @@ public /* singleton */ class GuidanceStubManager {
     // first missile fired would have to wait roughly half a second until the
     // first control input arrives. That is way too slow.
     private void initializeHealthCheck(int connectionId) {
-        this.helperExecutor.scheduleAtFixedRate(
-                () -> {
-                    var stub = this.stubs.get(connectionId);
-                    assert stub != null;
-                    HealthRequest healthRequest = HealthRequest.newBuilder().build();
-
-                    StreamObserver<HealthResponse> healthResponseObserver =
-                            new StreamObserver<HealthResponse>() {
-                                @Override
-                                public void onNext(HealthResponse controlInput) {
-                                    LOGGER.info("health check received for stub {}", connectionId);
+        var healthCheck =
+                this.helperExecutor.scheduleAtFixedRate(
+                        () -> {
+                            for (int replica = 0; replica < REPLICAS; ++replica) {
+                                // an exception would cancel all future health checks
+                                try {
+                                    this.checkHealth(connectionId, replica);
+                                } catch (RuntimeException e) {
+                                    LOGGER.error(
+                                            "health check of stub {} replica {} failed to start:"
+                                                    + " {}",
+                                            connectionId,
+                                            replica,
+                                            e.getMessage());
                                 }
-
-                                @Override
-                                public void onError(Throwable t) {
-                                    LOGGER.error("health check failed for stub {}", connectionId);
-                                }
-
-                                @Override
-                                public void onCompleted() {
-                                    LOGGER.info("health check completed for stub {}", connectionId);
-                                }
-                            };
-                    stub.healthCheck(healthRequest, healthResponseObserver);
-                },
-                0,
-                HEALTH_CHECK_SCHEDULE,
-                TimeUnit.SECONDS);
+                            }
+                        },
+                        0,
+                        HEALTH_CHECK_SCHEDULE,
+                        TimeUnit.SECONDS);
+        this.healthChecks.put(connectionId, healthCheck);
     }
 
-    private static String getServerAddress(int connectionId) {
-        String portStr = System.getenv("MC_MISSILE_GUIDANCE_PORT");
-        if (portStr == null) {
-            throw new java.lang.RuntimeException(
-                    "MC_MISSILE_GUIDANCE_PORT environment variable needs to be defined");
+    private void checkHealth(int connectionId, int replica) {
+        var stub = this.getStub(connectionId, replica);
+        if (stub == null) {
+            return;
         }
-        Integer port = Integer.parseInt(portStr);
+        HealthRequest healthRequest = HealthRequest.newBuilder().build();
 
-        var useLocalhost = System.getenv("MC_MISSILE_LOCALHOST_GUIDANCE_CONTROL");
-        if (useLocalhost != null && useLocalhost.equals("true")) {
-            LOGGER.warn("using localhost guidance server");
-            return "127.0.0.1:" + port;
-        }
-        String guidanceControlAddressPrefix =
-                System.getenv("MC_MISSILE_GUIDANCE_CONTROL_ADDRESS_PREFIX");
-        if (guidanceControlAddressPrefix == null) {
-            throw new java.lang.RuntimeException(
-                    "MC_MISSILE_GUIDANCE_CONTROL_ADDRESS_PREFIX environment variable needs to be"
-                            + " defined");
-        }
-        LOGGER.info("using {} prefix for guidance server", guidanceControlAddressPrefix);
-        return guidanceControlAddressPrefix + connectionId + ":" + port;
+        StreamObserver<HealthResponse> healthResponseObserver =
+                new StreamObserver<HealthResponse>() {
+                    @Override
+                    public void onNext(HealthResponse controlInput) {
+                        LOGGER.info(
+                                "health check received for stub {} replica {}",
+                                connectionId,
+                                replica);
+                        if (replica == HEDGE_REPLICA) {
+                            var hedgeStats = getHedgeStats(connectionId);
+                            LOGGER.info(
+                                    "guidance hedging of {}: primary won {}, hedge won {},"
+                                            + " {} duplicates, hedge cost {} bytes",
+                                    connectionId,
+                                    hedgeStats.getWins(PRIMARY_REPLICA),
+                                    hedgeStats.getWins(HEDGE_REPLICA),
+                                    hedgeStats.getDuplicates(),
+                                    hedgeStats.getHedgeBytes());
+                            return;
+                        }
+                        var report = getLatencyStats(connectionId).getReport();
+                        LOGGER.info(
+                                "guidance latency of {}: round trip {}ms,"
+                                        + " processing {}ms, tick phase {}ms, clock"
+                                        + " offset {}ms",
+                                connectionId,
+                                report.getRoundTripMillis(),
+                                report.getProcessingMillis(),
+                                report.getTickPhaseMillis(),
+                                report.getClockOffsetMillis());
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        LOGGER.error(
+                                "health check failed for stub {} replica {}",
+                                connectionId,
+                                replica);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        LOGGER.info(
+                                "health check completed for stub {} replica {}",
+                                connectionId,
+                                replica);
+                    }
+                };
+        stub.healthCheck(healthRequest, healthResponseObserver);
     }
 }
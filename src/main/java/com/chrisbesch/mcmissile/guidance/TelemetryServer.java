@@ -0,0 +1,230 @@
+package com.chrisbesch.mcmissile.guidance;
+
+import io.grpc.InsecureServerCredentials;
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// This singleton serves the Telemetry gRPC service.
+// Spectators and analysis tools subscribe to the missile states, lock events and detonations
+// without sitting in the guidance path.
+// Each subscriber has its own bounded queue:
+// - Only the latest state of each missile is kept, older states are dropped.
+// - Lock and detonation events are kept up to MAX_PENDING_EVENTS, the oldest are dropped.
+// The server thread only ever puts into those queues, the events are sent on a separate thread when
+// the subscriber is ready. So slow subscribers never slow down the tick or the guidance streams.
+public /* singleton */ class TelemetryServer extends TelemetryGrpc.TelemetryImplBase {
+    private static final String MOD_ID = "mc-missile";
+    private static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+
+    private static final int MAX_PENDING_EVENTS = 1024;
+
+    private static TelemetryServer instance = null;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // sends the events to all subscribers
+    private final ExecutorService sendExecutor = Executors.newSingleThreadExecutor();
+
+    private Server server;
+
+    private TelemetryServer() {}
+
+    public static TelemetryServer getInstance() {
+        if (instance == null) {
+            instance = new TelemetryServer();
+        }
+        return instance;
+    }
+
+    // Start serving when MC_MISSILE_TELEMETRY_PORT is defined.
+    // By default, only local subscribers can connect.
+    public void start() {
+        String portStr = System.getenv("MC_MISSILE_TELEMETRY_PORT");
+        if (portStr == null) {
+            LOGGER.info("MC_MISSILE_TELEMETRY_PORT isn't defined, not serving telemetry");
+            return;
+        }
+        String address = System.getenv("MC_MISSILE_TELEMETRY_ADDRESS");
+        if (address == null) {
+            address = "127.0.0.1";
+        }
+        try {
+            this.server =
+                    NettyServerBuilder.forAddress(
+                                    new InetSocketAddress(address, Integer.parseInt(portStr)),
+                                    InsecureServerCredentials.create())
+                            .addService(this)
+                            .build()
+                            .start();
+        } catch (IOException e) {
+            throw new java.lang.RuntimeException("failed to start telemetry server", e);
+        }
+        LOGGER.info("serving telemetry on {}:{}", address, portStr);
+    }
+
+    @Override
+    public void subscribe(
+            TelemetryRequest request, StreamObserver<TelemetryEvent> responseObserver) {
+        var subscriber =
+                new Subscriber(
+                        request, (ServerCallStreamObserver<TelemetryEvent>) responseObserver);
+        subscriber.observer.setOnReadyHandler(() -> this.scheduleDrain(subscriber));
+        subscriber.observer.setOnCancelHandler(
+                () -> {
+                    LOGGER.info("telemetry subscriber left");
+                    this.subscribers.remove(subscriber);
+                });
+        this.subscribers.add(subscriber);
+        LOGGER.info("new telemetry subscriber, {} in total", this.subscribers.size());
+    }
+
+    public boolean hasSubscribers() {
+        return !this.subscribers.isEmpty();
+    }
+
+    public void publishState(MissileState missileState) {
+        for (var subscriber : this.subscribers) {
+            // destroyed states don't have a position
+            if (!subscriber.matches(
+                    missileState.getMissile(),
+                    !missileState.getDestroyed(),
+                    missileState.getPosX(),
+                    missileState.getPosY(),
+                    missileState.getPosZ())) {
+                continue;
+            }
+            synchronized (subscriber) {
+                // conflate
+                subscriber.pendingStates.put(
+                        missileState.getMissile().getId(),
+                        TelemetryEvent.newBuilder().setState(missileState).build());
+            }
+            this.scheduleDrain(subscriber);
+        }
+    }
+
+    public void publishLock(LockEvent lockEvent) {
+        this.publishEvent(
+                TelemetryEvent.newBuilder().setLock(lockEvent).build(),
+                lockEvent.getMissile(),
+                lockEvent.getPosX(),
+                lockEvent.getPosY(),
+                lockEvent.getPosZ());
+    }
+
+    public void publishDetonation(DetonationEvent detonationEvent) {
+        this.publishEvent(
+                TelemetryEvent.newBuilder().setDetonation(detonationEvent).build(),
+                detonationEvent.getMissile(),
+                detonationEvent.getPosX(),
+                detonationEvent.getPosY(),
+                detonationEvent.getPosZ());
+    }
+
+    private void publishEvent(
+            TelemetryEvent telemetryEvent, Missile missile, double x, double y, double z) {
+        for (var subscriber : this.subscribers) {
+            if (!subscriber.matches(missile, true, x, y, z)) {
+                continue;
+            }
+            synchronized (subscriber) {
+                if (subscriber.pendingEvents.size() >= MAX_PENDING_EVENTS) {
+                    subscriber.pendingEvents.poll();
+                }
+                subscriber.pendingEvents.add(telemetryEvent);
+            }
+            this.scheduleDrain(subscriber);
+        }
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        synchronized (subscriber) {
+            if (subscriber.drainScheduled) {
+                return;
+            }
+            subscriber.drainScheduled = true;
+        }
+        this.sendExecutor.submit(() -> this.drain(subscriber));
+    }
+
+    // only called on the sendExecutor
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            TelemetryEvent telemetryEvent;
+            synchronized (subscriber) {
+                // Try again when the subscriber becomes ready or there is something new.
+                if (subscriber.observer.isCancelled() || !subscriber.observer.isReady()) {
+                    subscriber.drainScheduled = false;
+                    return;
+                }
+                telemetryEvent = subscriber.pendingEvents.poll();
+                if (telemetryEvent == null) {
+                    var iterator = subscriber.pendingStates.values().iterator();
+                    if (iterator.hasNext()) {
+                        telemetryEvent = iterator.next();
+                        iterator.remove();
+                    }
+                }
+                if (telemetryEvent == null) {
+                    subscriber.drainScheduled = false;
+                    return;
+                }
+            }
+            try {
+                subscriber.observer.onNext(telemetryEvent);
+            } catch (RuntimeException e) {
+                LOGGER.error("telemetry send error: {}", e.getMessage());
+                this.subscribers.remove(subscriber);
+                return;
+            }
+        }
+    }
+
+    private static class Subscriber {
+        private final TelemetryRequest request;
+        private final ServerCallStreamObserver<TelemetryEvent> observer;
+
+        // all of these are guarded by the subscriber itself
+        // missile id -> latest state
+        private final Map<Integer, TelemetryEvent> pendingStates =
+                new LinkedHashMap<Integer, TelemetryEvent>();
+        private final ArrayDeque<TelemetryEvent> pendingEvents = new ArrayDeque<TelemetryEvent>();
+        private boolean drainScheduled = false;
+
+        private Subscriber(
+                TelemetryRequest request, ServerCallStreamObserver<TelemetryEvent> observer) {
+            this.request = request;
+            this.observer = observer;
+        }
+
+        private boolean matches(Missile missile, boolean hasPos, double x, double y, double z) {
+            if (this.request.getConnectionIdsCount() > 0
+                    && !this.request.getConnectionIdsList().contains(missile.getConnectionId())) {
+                return false;
+            }
+            if (!this.request.getHasArea() || !hasPos) {
+                return true;
+            }
+            return x >= this.request.getMinX()
+                    && y >= this.request.getMinY()
+                    && z >= this.request.getMinZ()
+                    && x <= this.request.getMaxX()
+                    && y <= this.request.getMaxY()
+                    && z <= this.request.getMaxZ();
+        }
+    }
+}
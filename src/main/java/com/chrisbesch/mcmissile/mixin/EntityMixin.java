@@ -0,0 +1,30 @@
+package com.chrisbesch.mcmissile.mixin;
+
+import com.chrisbesch.mcmissile.MissileEntity;
+
+import net.minecraft.entity.Entity;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(Entity.class)
+public abstract class EntityMixin {
+    // Firework rockets don't override setRemoved, so this has to be injected into Entity.
+    // Every removal goes through here, including /kill and falling into the void, so the missile
+    // always releases its governor slot, guidance connection and chunk tickets.
+    // Missiles that are only unloaded are suspended instead, they resume when they are loaded
+    // again.
+    @Inject(method = "setRemoved", at = @At("HEAD"))
+    private void setRemovedInject(Entity.RemovalReason reason, CallbackInfo info) {
+        if (!((Object) this instanceof MissileEntity missileEntity) || !missileEntity.isMissile()) {
+            return;
+        }
+        if (reason.shouldDestroy()) {
+            missileEntity.destroyMissile();
+        } else {
+            missileEntity.suspendMissile();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.chrisbesch.mcmissile.mixin;
+
+import com.chrisbesch.mcmissile.MissileEntity;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.server.network.EntityTrackerEntry;
+
+import org.objectweb.asm.Opcodes;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+
+@Mixin(EntityTrackerEntry.class)
+public abstract class EntityTrackerEntryMixin {
+    @Shadow @Final private Entity entity;
+    @Shadow @Final private boolean alwaysUpdateVelocity;
+
+    // Firework rockets always send their velocity to the clients when it changed.
+    // The velocity of a missile changes every tick, so that would be 20 packets a second for each
+    // missile. Instead missiles set velocityDirty themselves when the clients' prediction is off.
+    @Redirect(
+            method = "tick()V",
+            at =
+                    @At(
+                            value = "FIELD",
+                            target =
+                                    "Lnet/minecraft/server/network/EntityTrackerEntry;alwaysUpdateVelocity:Z",
+                            opcode = Opcodes.GETFIELD))
+    private boolean alwaysUpdateVelocityRedirect(EntityTrackerEntry entry) {
+        if (this.entity instanceof MissileEntity missileEntity && missileEntity.isMissile()) {
+            return false;
+        }
+        return this.alwaysUpdateVelocity;
+    }
+}
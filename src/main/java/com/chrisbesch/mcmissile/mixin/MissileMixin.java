@@ -1,11 +1,25 @@
 package com.chrisbesch.mcmissile.mixin;
 
+import com.chrisbesch.mcmissile.BlockSeekerIndex;
+import com.chrisbesch.mcmissile.ChunkPreloader;
+import com.chrisbesch.mcmissile.ConnectionScheduler;
+import com.chrisbesch.mcmissile.DetonationQueue;
 import com.chrisbesch.mcmissile.Hardware;
+import com.chrisbesch.mcmissile.MissileCollision;
 import com.chrisbesch.mcmissile.MissileDiscardedException;
+import com.chrisbesch.mcmissile.MissileEntity;
+import com.chrisbesch.mcmissile.MissileGovernor;
+import com.chrisbesch.mcmissile.ParallelFlightDynamics;
+import com.chrisbesch.mcmissile.SeekerTargetIndex;
 import com.chrisbesch.mcmissile.guidance.ControlInput;
+import com.chrisbesch.mcmissile.guidance.DetonationEvent;
 import com.chrisbesch.mcmissile.guidance.GuidanceStubManager;
+import com.chrisbesch.mcmissile.guidance.LockEvent;
 import com.chrisbesch.mcmissile.guidance.Missile;
+import com.chrisbesch.mcmissile.guidance.MissileSnapshot;
 import com.chrisbesch.mcmissile.guidance.MissileState;
+import com.chrisbesch.mcmissile.guidance.TelemetryServer;
+import com.google.protobuf.InvalidProtocolBufferException;
 
 import net.minecraft.component.DataComponentTypes;
 import net.minecraft.component.type.FireworkExplosionComponent;
@@ -19,12 +33,15 @@ import net.minecraft.entity.effect.StatusEffects;
 import net.minecraft.entity.projectile.FireworkRocketEntity;
 import net.minecraft.entity.projectile.ProjectileEntity;
 import net.minecraft.entity.projectile.ProjectileUtil;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.registry.Registries;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.sound.SoundCategory;
 import net.minecraft.sound.SoundEvents;
 import net.minecraft.text.Text;
+import net.minecraft.util.hit.BlockHitResult;
 import net.minecraft.util.hit.HitResult;
-import net.minecraft.util.math.Box;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec2f;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.math.random.Random;
@@ -38,12 +55,15 @@ import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Mixin(FireworkRocketEntity.class)
-public abstract class MissileMixin extends ProjectileEntity implements FlyingItemEntity {
+public abstract class MissileMixin extends ProjectileEntity
+        implements FlyingItemEntity, MissileEntity {
     // position is stored in ProjectileEntity
     // velocity is stored in ProjectileEntity
     // rotation is stored in ProjectileEntity
@@ -52,6 +72,15 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
 
     private static final Pattern MISSILE_NAME_PATTERN = Pattern.compile("^m/(\\d\\d)/(.+)$");
     private static final int GLOWING_TICKS = 20 * 2;
+    // how far the clients' prediction may be off before the missile is synced again
+    private static final double CLIENT_SYNC_POS_THRESHOLD = 0.25D;
+    private static final double CLIENT_SYNC_VEL_THRESHOLD = 0.05D;
+    // load the chunks this far ahead of the missile
+    private static final int PRELOAD_TICKS = 20 * 3;
+    // how often the predicted path is updated
+    private static final int PRELOAD_INTERVAL = 10;
+    // where the MissileSnapshot is stored in the entity NBT
+    private static final String NBT_KEY = "mc_missile";
 
     private final Random random = Random.create();
 
@@ -67,6 +96,41 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
     private Vec3d gravity = new Vec3d(0.0D, -0.2D, 0.0D);
 
     private Entity seekerHeadEntityLock;
+    private BlockPos seekerHeadBlockLock;
+
+    // what the clients think the missile is doing
+    // null when the missile hasn't been synced yet
+    private Vec3d clientSyncedPos;
+    private Vec3d clientSyncedVel;
+    private int clientSyncCount = 0;
+
+    // The velocity computed by the parallel flight dynamics for this server tick.
+    // Only valid when plannedServerTick is the current server tick.
+    private int plannedServerTick = -1;
+    private Vec3d plannedVel;
+
+    // how often the guidance server wants a missile state, see ControlInput.stateUpdateInterval
+    private int stateUpdateInterval = 1;
+    private double stateDriftThreshold = 0.0D;
+    // what the guidance server got with the last missile state
+    private int lastSentStateTick = 0;
+    private Vec3d lastSentStatePos = Vec3d.ZERO;
+    private Vec3d lastSentStateVel = Vec3d.ZERO;
+    private boolean lastSentTargetLock = false;
+    private boolean lastSentTargetVisible = false;
+
+    // reused for every missile state this missile sends
+    // null when the missile hasn't sent anything yet
+    private MissileState.Builder missileStateBuilder;
+
+    // set while the governor, the parallel flight dynamics and the chunk preloader know the missile
+    private boolean registered = false;
+    // set when the missile has been loaded from disk and hasn't ticked since
+    private boolean restored = false;
+    // set while a loaded missile waits for its guidance connection
+    private boolean resumePending = false;
+    // the entity might not be loaded yet when the missile is restored
+    private UUID restoredEntityLockUuid;
 
     // this constructor is only needed to make the compiler happy
     public MissileMixin(EntityType<? extends ProjectileEntity> entityType, World world) {
@@ -117,7 +181,7 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
 
         try {
             var connectionId = Integer.parseInt(matcher.group(1));
-            if (!GuidanceStubManager.getInstance().hasStub(connectionId)) {
+            if (!GuidanceStubManager.getInstance().hasGuidance(connectionId)) {
                 LOGGER.info("rocket's connectionId is not known: {}", connectionId);
                 return;
             }
@@ -128,12 +192,22 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
             return;
         }
 
+        // this has to be the last check, the governor counts the missile as flying
+        if (!MissileGovernor.getInstance().admitLaunch(missileBuilder.getConnectionId())) {
+            LOGGER.debug("rocket isn't admitted as a missile");
+            return;
+        }
+
         this.missile = missileBuilder.build();
+        this.registered = true;
         LOGGER.info(
                 "detected missile {} on connection id {}, missile id {}",
                 this.missile.getName(),
                 this.missile.getConnectionId(),
                 this.missile.getId());
+        if (thisObject.getWorld() instanceof ServerWorld serverWorld) {
+            ParallelFlightDynamics.getInstance().addMissile(serverWorld, this);
+        }
     }
 
     private void launchMissile() {
@@ -168,23 +242,89 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
             // move once so that we don't bump into flying shooter
             thisObject.move(MovementType.SELF, owner.getVelocity().multiply(2.0D));
             thisObject.setVelocity(owner.getVelocity());
-            thisObject.velocityDirty = true;
         } else {
             thisObject.setVelocity(Vec3d.ZERO);
-            thisObject.velocityDirty = true;
         }
+        updateClientSync();
         lockIRSeeker();
-        GuidanceStubManager.getInstance().establishGuidanceConnection(constructMissileState());
+        lockBlockSeeker();
+        var initialMissileState = constructMissileState();
+        rememberSentState(initialMissileState);
+        ConnectionScheduler.getInstance()
+                .recordStateBytes(
+                        this.missile.getConnectionId(), initialMissileState.getSerializedSize());
+        if (!GuidanceStubManager.getInstance().establishGuidanceConnection(initialMissileState)) {
+            // the connection id has been removed since the missile was identified
+            discardAndNotify();
+        }
+    }
+
+    // Called on the first tick after the missile has been loaded from disk.
+    // This only registers the missile, the guidance connection is resumed later.
+    private void restoreMissile() {
+        assert this.missile != null;
+        FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
+
+        LOGGER.debug(
+                "{}: restoring missile on connection id {} at time {}",
+                this.missile.getId(),
+                this.missile.getConnectionId(),
+                this.tickCount);
+        MissileGovernor.getInstance().onMissileRestored(this.missile.getConnectionId());
+        if (thisObject.getWorld() instanceof ServerWorld serverWorld) {
+            ParallelFlightDynamics.getInstance().addMissile(serverWorld, this);
+        }
+        this.registered = true;
+        this.restored = false;
+        this.resumePending = true;
+    }
+
+    // Re-establish the guidance connection of a missile loaded from disk.
+    // The guidance server gets a resumed missile state instead of a new launch.
+    private void resumeMissile() {
+        assert this.missile != null;
+        FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
+
+        LOGGER.debug("{}: resuming guidance at time {}", this.missile.getId(), this.tickCount);
+        if (this.restoredEntityLockUuid != null
+                && thisObject.getWorld() instanceof ServerWorld serverWorld) {
+            // when the target isn't loaded the lock is lost
+            this.seekerHeadEntityLock = serverWorld.getEntity(this.restoredEntityLockUuid);
+            this.restoredEntityLockUuid = null;
+        }
+        var resumedMissileState = constructMissileState().toBuilder().setResumed(true).build();
+        rememberSentState(resumedMissileState);
+        ConnectionScheduler.getInstance()
+                .recordStateBytes(
+                        this.missile.getConnectionId(), resumedMissileState.getSerializedSize());
+        if (!GuidanceStubManager.getInstance().establishGuidanceConnection(resumedMissileState)) {
+            // The connection id has been removed while the missile was waiting to resume.
+            // It stays resume pending, so that destroying it doesn't end a connection.
+            discardAndNotify();
+            return;
+        }
+        this.resumePending = false;
     }
 
     private void readControlInput() throws MissileDiscardedException {
-        LOGGER.info("reading control input: {}", this.tickCount);
+        LOGGER.debug("reading control input: {}", this.tickCount);
         assert this.missile != null;
         FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
 
+        // there is no guidance connection yet
+        if (this.resumePending) {
+            return;
+        }
+
         var controlInput =
-                GuidanceStubManager.getInstance().consumeLatestControlInput(this.missile);
+                GuidanceStubManager.getInstance()
+                        .consumeLatestControlInput(
+                                this.missile, this.lastSentStateTick == this.tickCount - 1);
         if (controlInput != null) {
+            if (controlInput.getStateUpdateInterval() > 0) {
+                this.stateUpdateInterval = controlInput.getStateUpdateInterval();
+                this.stateDriftThreshold = controlInput.getStateDriftThreshold();
+            }
             // Only load the config directly after launch.
             // When there is no config given, use the default.
             if (this.tickCount == 1 && controlInput.getHardwareConfig() != null) {
@@ -215,7 +355,11 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
         if (!this.hardware.seekerHeadShouldTargetEntity) {
             return;
         }
-        LOGGER.info("attempting target lock");
+        // the seeker budget is shared between the connection ids
+        if (!ConnectionScheduler.getInstance().tryAcquireSeeker(this.missile.getConnectionId())) {
+            return;
+        }
+        LOGGER.debug("attempting target lock");
 
         World world = thisObject.getWorld();
         if (!(thisObject.getWorld() instanceof ServerWorld serverWorld)) {
@@ -224,26 +368,19 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
 
         Vec3d pos = thisObject.getPos();
 
+        // All missiles share the same index, the world isn't scanned for each missile.
         List<? extends Entity> possible_targets =
-                serverWorld.getEntitiesByType(
-                        this.hardware.sensorHeadEntityFilter,
-                        // search in a large box around the missile
-                        new Box(
-                                pos.getX() - this.hardware.seekerHeadRange,
-                                pos.getY() - this.hardware.seekerHeadRange,
-                                pos.getZ() - this.hardware.seekerHeadRange,
-                                pos.getX() + this.hardware.seekerHeadRange,
-                                pos.getY() + this.hardware.seekerHeadRange,
-                                pos.getZ() + this.hardware.seekerHeadRange),
-                        possible_target ->
-                                (this.canSee((Entity) possible_target))
-                                        // check the target is not out of range (i.e. in the corners
-                                        // of the big box)
-                                        && pos.subtract(possible_target.getPos()).lengthSquared()
-                                                <= (this.hardware.seekerHeadRange
-                                                        * this.hardware.seekerHeadRange)
+                SeekerTargetIndex.getInstance()
+                        .getTargets(
+                                serverWorld,
+                                this.hardware.sensorHeadEntityFilter,
+                                pos,
+                                this.hardware.seekerHeadRange,
+                                possible_target ->
                                         // don't target yourself
-                                        && possible_target != thisObject.getOwner());
+                                        possible_target != thisObject.getOwner()
+                                                // only raycast the remaining candidates
+                                                && this.canSee(possible_target));
         this.seekerHeadEntityLock = minAngleTarget(possible_targets);
         if (this.seekerHeadEntityLock != null
                 && this.seekerHeadEntityLock instanceof LivingEntity) {
@@ -251,6 +388,78 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
                     .addStatusEffect(
                             new StatusEffectInstance(StatusEffects.GLOWING, GLOWING_TICKS));
         }
+        if (this.seekerHeadEntityLock != null && TelemetryServer.getInstance().hasSubscribers()) {
+            TelemetryServer.getInstance()
+                    .publishLock(
+                            LockEvent.newBuilder()
+                                    .setMissile(this.missile)
+                                    .setTime(this.tickCount)
+                                    .setPosX(pos.x)
+                                    .setPosY(pos.y)
+                                    .setPosZ(pos.z)
+                                    .setTargetUuid(this.seekerHeadEntityLock.getUuidAsString())
+                                    .setTargetType(
+                                            Registries.ENTITY_TYPE
+                                                    .getId(this.seekerHeadEntityLock.getType())
+                                                    .toString())
+                                    .setTargetPosX(this.seekerHeadEntityLock.getX())
+                                    .setTargetPosY(this.seekerHeadEntityLock.getY())
+                                    .setTargetPosZ(this.seekerHeadEntityLock.getZ())
+                                    .build());
+        }
+    }
+
+    // Always run this just before we send the missile state to the guidance server.
+    private void lockBlockSeeker() {
+        FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
+        // only lock onto first target
+        if (this.seekerHeadBlockLock != null) {
+            return;
+        }
+        if (!this.hardware.seekerHeadShouldTargetBlock) {
+            return;
+        }
+        // the seeker budget is shared between the connection ids
+        if (!ConnectionScheduler.getInstance().tryAcquireSeeker(this.missile.getConnectionId())) {
+            return;
+        }
+        LOGGER.debug("attempting block target lock");
+
+        if (!(thisObject.getWorld() instanceof ServerWorld serverWorld)) {
+            return;
+        }
+
+        Vec3d pos = thisObject.getPos();
+        // the palette-indexed search doesn't scan every block in range
+        this.seekerHeadBlockLock =
+                BlockSeekerIndex.getInstance()
+                        .findTarget(
+                                serverWorld,
+                                this.hardware.sensorHeadBlock,
+                                pos,
+                                thisObject.getRotationVector(
+                                        -thisObject.getPitch(), -thisObject.getYaw()),
+                                this.hardware.seekerHeadRange,
+                                this.hardware.seekerHeadFOV,
+                                this::canSeeBlock);
+        if (this.seekerHeadBlockLock != null && TelemetryServer.getInstance().hasSubscribers()) {
+            TelemetryServer.getInstance()
+                    .publishLock(
+                            LockEvent.newBuilder()
+                                    .setMissile(this.missile)
+                                    .setTime(this.tickCount)
+                                    .setPosX(pos.x)
+                                    .setPosY(pos.y)
+                                    .setPosZ(pos.z)
+                                    .setTargetType(
+                                            Registries.BLOCK
+                                                    .getId(this.hardware.sensorHeadBlock)
+                                                    .toString())
+                                    .setTargetPosX(this.seekerHeadBlockLock.getX())
+                                    .setTargetPosY(this.seekerHeadBlockLock.getY())
+                                    .setTargetPosZ(this.seekerHeadBlockLock.getZ())
+                                    .build());
+        }
     }
 
     private Entity minAngleTarget(List<? extends Entity> targets) {
@@ -291,6 +500,33 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
                 == HitResult.Type.MISS;
     }
 
+    private boolean canSeeBlock(BlockPos blockPos) {
+        FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
+        // the block might have been destroyed since the lock
+        if (!this.getWorld().getBlockState(blockPos).isOf(this.hardware.sensorHeadBlock)) {
+            return false;
+        }
+        BlockHitResult hitResult =
+                this.getWorld()
+                        .raycast(
+                                new RaycastContext(
+                                        thisObject.getPos(),
+                                        Vec3d.ofCenter(blockPos),
+                                        RaycastContext.ShapeType.COLLIDER,
+                                        RaycastContext.FluidHandling.NONE,
+                                        this));
+        // the ray ends inside the block, so it usually hits the block itself
+        return hitResult.getType() == HitResult.Type.MISS
+                || hitResult.getBlockPos().equals(blockPos);
+    }
+
+    private boolean canSeeTarget() {
+        if (this.seekerHeadEntityLock != null) {
+            return this.canSee(this.seekerHeadEntityLock);
+        }
+        return this.seekerHeadBlockLock != null && this.canSeeBlock(this.seekerHeadBlockLock);
+    }
+
     private void applyControlInput(ControlInput controlInput) throws MissileDiscardedException {
         assert this.missile != null;
         assert controlInput != null;
@@ -320,10 +556,106 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
         this.setYaw(this.getYaw() + rotTurn.y);
     }
 
+    @Override
+    public boolean prepareParallelTick(int serverTick) {
+        FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
+        // the launch isn't precomputed
+        if (this.missile == null || this.tickCount == 0) {
+            return false;
+        }
+        // Reading the control input consumes it.
+        // Only do that when the world will tick the missile, like ServerWorld.tick decides.
+        if (!(thisObject.getWorld() instanceof ServerWorld serverWorld)
+                || thisObject.isRemoved()
+                || thisObject.hasVehicle()
+                || serverWorld.getTickManager().shouldSkipTick(thisObject)
+                || !serverWorld.shouldTickEntity(thisObject.getBlockPos())) {
+            return false;
+        }
+        try {
+            // The control input decides the rotation the flight dynamics start from.
+            readControlInput();
+        } catch (MissileDiscardedException e) {
+            return false;
+        }
+        this.plannedServerTick = serverTick;
+        return true;
+    }
+
+    @Override
+    public void computeParallelTick() {
+        this.plannedVel = computeFlightDynamics();
+    }
+
+    private boolean isPlannedForThisTick() {
+        FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
+        return thisObject.getServer() != null
+                && this.plannedServerTick == thisObject.getServer().getTicks();
+    }
+
     // Update velocity and position of the missile.
-    private void applyFlightDynamics() {
+    // Return what the missile hit on its way.
+    private HitResult applyFlightDynamics() {
         // TODO: remove
-        LOGGER.info("applying flight dynamics, time: {}", this.tickCount);
+        LOGGER.debug("applying flight dynamics, time: {}", this.tickCount);
+        assert this.missile != null;
+        FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
+
+        // the parallel flight dynamics might have done this already
+        Vec3d velWithDrag = isPlannedForThisTick() ? this.plannedVel : computeFlightDynamics();
+        // We can always hit, this::canHit would be cleaner though.
+        Vec3d start = thisObject.getPos();
+        HitResult hitResult =
+                MissileCollision.sweep(
+                        thisObject.getWorld(),
+                        thisObject,
+                        start,
+                        start.add(velWithDrag),
+                        e -> true);
+        thisObject.setVelocity(velWithDrag);
+        // don't fly through what we hit
+        thisObject.move(
+                MovementType.SELF,
+                hitResult.getType() == HitResult.Type.MISS
+                        ? velWithDrag
+                        : hitResult.getPos().subtract(start));
+        // set the velocity twice as the velocity might be changed when colliding
+        // the original firework rocket code does this, too
+        thisObject.setVelocity(velWithDrag);
+        updateClientSync();
+        if (thisObject.getWorld() instanceof ServerWorld serverWorld) {
+            ChunkPreloader.getInstance().checkStall(serverWorld, thisObject);
+            if (this.tickCount % PRELOAD_INTERVAL == 1) {
+                ChunkPreloader.getInstance().update(serverWorld, thisObject, predictPath());
+            }
+        }
+        return hitResult;
+    }
+
+    // Extrapolate the positions of the missile in the next PRELOAD_TICKS ticks from the thrust,
+    // gravity and drag.
+    // The guidance server might turn the missile, this assumes it keeps its current heading.
+    private List<Vec3d> predictPath() {
+        FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
+        Vec3d heading = thisObject.getRotationVector(-thisObject.getPitch(), -thisObject.getYaw());
+        Vec3d pos = thisObject.getPos();
+        Vec3d vel = thisObject.getVelocity();
+        List<Vec3d> path = new ArrayList<Vec3d>();
+        int end = Math.min(this.tickCount + PRELOAD_TICKS, this.hardware.timeToLive);
+        for (int tick = this.tickCount + 1; tick <= end; ++tick) {
+            vel =
+                    vel.add(this.gravity)
+                            .add(heading.multiply(this.hardware.accelerationCurve.apply(tick)))
+                            .multiply(1.0D - this.hardware.drag);
+            pos = pos.add(vel);
+            path.add(pos);
+        }
+        return path;
+    }
+
+    // Apply the rotation variance and compute the new velocity from the thrust, gravity and drag.
+    // This only touches this missile, so it may run on any thread.
+    private Vec3d computeFlightDynamics() {
         assert this.missile != null;
         FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
 
@@ -352,13 +684,37 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
                                                 + this.random.nextGaussian()
                                                         * this.hardware.accelerationRelVariance)));
         Vec3d vel = thisObject.getVelocity().add(acc);
-        Vec3d velWithDrag = vel.multiply(1.0D - this.hardware.drag);
-        thisObject.setVelocity(velWithDrag);
-        thisObject.move(MovementType.SELF, velWithDrag);
-        // set the velocity twice as the velocity might be changed when colliding
-        // the original firework rocket code does this, too
-        thisObject.setVelocity(velWithDrag);
+        return vel.multiply(1.0D - this.hardware.drag);
+    }
+
+    // Only sync the missile to the clients when their prediction is off.
+    // The clients move a missile shot at an angle in a straight line with the velocity synced last.
+    // There is no gravity or drag on the client.
+    private void updateClientSync() {
+        assert this.missile != null;
+        FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
+
+        Vec3d pos = thisObject.getPos();
+        Vec3d vel = thisObject.getVelocity();
+        if (this.clientSyncedPos != null) {
+            // where the clients have the missile now
+            this.clientSyncedPos = this.clientSyncedPos.add(this.clientSyncedVel);
+            if (pos.squaredDistanceTo(this.clientSyncedPos)
+                            <= CLIENT_SYNC_POS_THRESHOLD * CLIENT_SYNC_POS_THRESHOLD
+                    && vel.squaredDistanceTo(this.clientSyncedVel)
+                            <= CLIENT_SYNC_VEL_THRESHOLD * CLIENT_SYNC_VEL_THRESHOLD) {
+                return;
+            }
+        }
+        this.clientSyncedPos = pos;
+        this.clientSyncedVel = vel;
         thisObject.velocityDirty = true;
+        ++this.clientSyncCount;
+    }
+
+    @Override
+    public boolean isMissile() {
+        return this.missile != null;
     }
 
     private MissileState constructMissileState() {
@@ -369,8 +725,12 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
         Vec3d vel = thisObject.getVelocity();
         double pitch = thisObject.getPitch();
         double yaw = thisObject.getYaw();
+        if (this.missileStateBuilder == null) {
+            this.missileStateBuilder = MissileState.newBuilder();
+        }
         var builder =
-                MissileState.newBuilder()
+                this.missileStateBuilder
+                        .clear()
                         .setTime(this.tickCount)
                         .setPosX(pos.x + this.random.nextGaussian() * this.hardware.posVariance)
                         .setPosY(pos.y + this.random.nextGaussian() * this.hardware.posVariance)
@@ -385,7 +745,7 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
                         .setMissile(this.missile);
         if (this.seekerHeadEntityLock != null) {
             // TODO: remove
-            LOGGER.info("target lock");
+            LOGGER.debug("target lock");
             builder.setTargetLock(true);
             if (this.canSee(this.seekerHeadEntityLock)) {
                 var lockPos = this.seekerHeadEntityLock.getPos();
@@ -418,15 +778,82 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
             } else {
                 builder.setTargetVisible(false);
             }
+        } else if (this.seekerHeadBlockLock != null) {
+            builder.setTargetLock(true);
+            if (this.canSeeBlock(this.seekerHeadBlockLock)) {
+                var lockPos = Vec3d.ofCenter(this.seekerHeadBlockLock);
+                builder.setTargetPosX(
+                                lockPos.x
+                                        + this.random.nextGaussian()
+                                                * this.hardware.seekerHeadTargetPosVariance)
+                        .setTargetPosY(
+                                lockPos.y
+                                        + this.random.nextGaussian()
+                                                * this.hardware.seekerHeadTargetPosVariance)
+                        .setTargetPosZ(
+                                lockPos.z
+                                        + this.random.nextGaussian()
+                                                * this.hardware.seekerHeadTargetPosVariance)
+                        // blocks don't move
+                        .setTargetVelX(0.0D)
+                        .setTargetVelY(0.0D)
+                        .setTargetVelZ(0.0D)
+                        .setTargetVisible(true);
+            } else {
+                builder.setTargetVisible(false);
+            }
         } else {
             builder.setTargetLock(false).setTargetVisible(false);
         }
+        GuidanceStubManager.getInstance().stampMissileState(builder);
         return builder.build();
     }
 
     private void sendMissileState() {
         assert this.missile != null;
-        GuidanceStubManager.getInstance().sendMissileState(constructMissileState());
+        var missileState = constructMissileState();
+        rememberSentState(missileState);
+        ConnectionScheduler.getInstance()
+                .recordStateBytes(this.missile.getConnectionId(), missileState.getSerializedSize());
+        GuidanceStubManager.getInstance().sendMissileState(missileState);
+    }
+
+    private void rememberSentState(MissileState missileState) {
+        FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
+        this.lastSentStateTick = this.tickCount;
+        this.lastSentStatePos = thisObject.getPos();
+        this.lastSentStateVel = thisObject.getVelocity();
+        this.lastSentTargetLock = missileState.getTargetLock();
+        this.lastSentTargetVisible = missileState.getTargetVisible();
+    }
+
+    // Whether the guidance server needs a new missile state this tick.
+    private boolean shouldSendState() {
+        if (this.stateUpdateInterval <= 1) {
+            return MissileGovernor.getInstance().shouldSendState(this.tickCount);
+        }
+        FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
+        // events are sent right away
+        boolean targetLock = this.seekerHeadEntityLock != null || this.seekerHeadBlockLock != null;
+        if (targetLock != this.lastSentTargetLock) {
+            return true;
+        }
+        if (targetLock && this.canSeeTarget() != this.lastSentTargetVisible) {
+            return true;
+        }
+        if (this.stateDriftThreshold > 0.0D) {
+            // the guidance server can at least extrapolate the last missile state linearly
+            Vec3d predictedPos =
+                    this.lastSentStatePos.add(
+                            this.lastSentStateVel.multiply(
+                                    this.tickCount - this.lastSentStateTick));
+            if (thisObject.getPos().squaredDistanceTo(predictedPos)
+                    > this.stateDriftThreshold * this.stateDriftThreshold) {
+                return true;
+            }
+        }
+        return this.tickCount - this.lastSentStateTick >= this.stateUpdateInterval
+                && MissileGovernor.getInstance().shouldSendState(this.tickCount);
     }
 
     // This completely replaces the original Minecraft tick method.
@@ -435,7 +862,22 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
         FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
 
         super.tick();
-        LOGGER.info("missile tick {}", this.tickCount);
+        LOGGER.debug("missile tick {}", this.tickCount);
+        // e.g. discarded in the void
+        if (thisObject.isRemoved()) {
+            return;
+        }
+
+        if (this.restored) {
+            restoreMissile();
+        }
+        // only a few missiles resume each tick
+        if (this.resumePending && MissileGovernor.getInstance().admitResume()) {
+            resumeMissile();
+            if (thisObject.isRemoved()) {
+                return;
+            }
+        }
 
         // <- missile tick begins
         //  <- client reads and applies last received control input
@@ -446,27 +888,45 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
         //              <- client reads and applies last received control input
         //               <- client applies missile dynamics
         //                <- client sends state
+        HitResult hitResult;
         if (this.tickCount == 0) {
             this.launchMissile();
+            if (thisObject.isRemoved()) {
+                return;
+            }
+            // entity collision check //
+            // We can always hit, this::canHit would be cleaner though.
+            // Do this after the update to ensure we don't hit ourself at launch.
+            hitResult = ProjectileUtil.getCollision(thisObject, e -> true);
         } else {
             try {
-                readControlInput();
-                applyFlightDynamics();
-                lockIRSeeker();
-                sendMissileState();
+                // the parallel flight dynamics might have done this already
+                if (!isPlannedForThisTick()) {
+                    readControlInput();
+                }
+                // the collision check is swept along the path of the missile
+                hitResult = applyFlightDynamics();
+                // under load these are done less often
+                if (MissileGovernor.getInstance().shouldUpdateSeeker(this.tickCount)) {
+                    lockIRSeeker();
+                    lockBlockSeeker();
+                }
+                // the guidance server and the governor decide how often
+                // the send budget is shared between the connection ids
+                if (!this.resumePending
+                        && shouldSendState()
+                        && ConnectionScheduler.getInstance()
+                                .tryAcquireState(this.missile.getConnectionId())) {
+                    sendMissileState();
+                }
             } catch (MissileDiscardedException e) {
                 // increase life out of courtesy before the end
                 ++tickCount;
                 return;
             }
         }
-        // entity collision check //
-        // We can always hit, this::canHit would be cleaner though.
-        // Do this after the update to ensure we don't hit ourself at launch.
-        HitResult hitResult = ProjectileUtil.getCollision(thisObject, e -> true);
         // In the original code this is run after the movement is applied so do it like this here,
         // too.
-        // TODO: block collision doesn't sometimes work when shot straight down
         // block collision check
         // this only does something when the rocket has explosion effects
         thisObject.tickBlockCollision();
@@ -488,32 +948,89 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
         ++tickCount;
     }
 
+    // The guidance connection is ended when the entity is removed, see destroyMissile.
     private void discardAndNotify() {
         assert this.missile != null;
         FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
-        LOGGER.info("discarding missile");
-        GuidanceStubManager.getInstance()
-                .endGuidanceConnection(
-                        MissileState.newBuilder()
-                                .setTime(this.tickCount)
-                                .setDestroyed(true)
-                                .setMissile(this.missile)
-                                .build());
         thisObject.discard();
     }
 
+    @Override
+    public void destroyMissile() {
+        assert this.missile != null;
+        if (!this.registered) {
+            return;
+        }
+        LOGGER.debug(
+                "{}: discarding missile, synced to clients {} times in {} ticks",
+                this.missile.getId(),
+                this.clientSyncCount,
+                this.tickCount);
+        // a missile waiting to resume doesn't have a guidance connection
+        if (!this.resumePending) {
+            GuidanceStubManager.getInstance()
+                    .endGuidanceConnection(
+                            MissileState.newBuilder()
+                                    .setTime(this.tickCount)
+                                    .setDestroyed(true)
+                                    .setMissile(this.missile)
+                                    .build());
+        }
+        unregisterMissile();
+    }
+
+    @Override
+    public void suspendMissile() {
+        assert this.missile != null;
+        // the missile hasn't been registered since it was loaded
+        if (!this.registered) {
+            return;
+        }
+        LOGGER.debug("{}: suspending missile at time {}", this.missile.getId(), this.tickCount);
+        // the guidance server can keep its state, the missile resumes with the same id
+        if (!this.resumePending) {
+            GuidanceStubManager.getInstance()
+                    .endGuidanceConnection(
+                            MissileState.newBuilder()
+                                    .setTime(this.tickCount)
+                                    .setSuspended(true)
+                                    .setMissile(this.missile)
+                                    .build());
+        }
+        unregisterMissile();
+    }
+
+    private void unregisterMissile() {
+        FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
+        this.registered = false;
+        MissileGovernor.getInstance().onMissileRemoved(this.missile.getConnectionId());
+        GuidanceStubManager.getInstance().onMissileRemoved(this.missile);
+        if (thisObject.getWorld() instanceof ServerWorld serverWorld) {
+            ParallelFlightDynamics.getInstance().removeMissile(serverWorld, this);
+            ChunkPreloader.getInstance().release(serverWorld, thisObject);
+        }
+    }
+
     private void detonateWarhead(ServerWorld world) {
         assert this.missile != null;
         FireworkRocketEntity thisObject = (FireworkRocketEntity) (Object) this;
 
         if (this.hardware.shouldDetonate) {
-            world.createExplosion(
-                    thisObject,
-                    thisObject.getX(),
-                    thisObject.getY(),
-                    thisObject.getZ(),
-                    this.hardware.detonationPower,
-                    World.ExplosionSourceType.TNT);
+            // explodes at the end of the tick, possibly merged with other missiles
+            DetonationQueue.getInstance()
+                    .enqueue(world, thisObject, thisObject.getPos(), this.hardware.detonationPower);
+            if (TelemetryServer.getInstance().hasSubscribers()) {
+                TelemetryServer.getInstance()
+                        .publishDetonation(
+                                DetonationEvent.newBuilder()
+                                        .setMissile(this.missile)
+                                        .setTime(this.tickCount)
+                                        .setPosX(thisObject.getX())
+                                        .setPosY(thisObject.getY())
+                                        .setPosZ(thisObject.getZ())
+                                        .setPower(this.hardware.detonationPower)
+                                        .build());
+            }
         }
     }
 
@@ -525,13 +1042,82 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
 
         // overwrite original tick method
         if (this.missile != null) {
+            long startNanos = System.nanoTime();
             this.missileTick();
+            MissileGovernor.getInstance().addMissileTickCost(System.nanoTime() - startNanos);
             info.cancel();
         } else {
             ++tickCount;
         }
     }
 
+    // Save what the missile needs to continue its flight.
+    // The firework rocket itself stores the item stack, position, velocity and rotation.
+    @Inject(at = @At("TAIL"), method = "writeCustomDataToNbt(Lnet/minecraft/nbt/NbtCompound;)V")
+    private void writeCustomDataToNbtInject(NbtCompound nbt, CallbackInfo info) {
+        if (this.missile == null) {
+            return;
+        }
+        var snapshot =
+                MissileSnapshot.newBuilder()
+                        .setMissile(this.missile)
+                        .setHardwareConfig(this.hardware.config)
+                        .setTime(this.tickCount)
+                        .setStateUpdateInterval(this.stateUpdateInterval)
+                        .setStateDriftThreshold(this.stateDriftThreshold);
+        if (this.seekerHeadEntityLock != null) {
+            snapshot.setEntityLockUuid(this.seekerHeadEntityLock.getUuidAsString());
+        } else if (this.restoredEntityLockUuid != null) {
+            // the missile is saved again before it resumed
+            snapshot.setEntityLockUuid(this.restoredEntityLockUuid.toString());
+        }
+        if (this.seekerHeadBlockLock != null) {
+            snapshot.setHasBlockLock(true).setBlockLock(this.seekerHeadBlockLock.asLong());
+        }
+        nbt.putByteArray(NBT_KEY, snapshot.build().toByteArray());
+    }
+
+    // Only parse the snapshot here, this is called while the chunk is loaded.
+    // The missile registers itself and resumes its guidance connection when it ticks.
+    @Inject(at = @At("TAIL"), method = "readCustomDataFromNbt(Lnet/minecraft/nbt/NbtCompound;)V")
+    private void readCustomDataFromNbtInject(NbtCompound nbt, CallbackInfo info) {
+        if (!nbt.contains(NBT_KEY)) {
+            return;
+        }
+        MissileSnapshot snapshot;
+        try {
+            snapshot = MissileSnapshot.parseFrom(nbt.getByteArray(NBT_KEY));
+        } catch (InvalidProtocolBufferException e) {
+            LOGGER.error("failed to parse saved missile: {}", e.getMessage());
+            return;
+        }
+        // the server might have been restarted with a different configuration
+        if (!GuidanceStubManager.getInstance()
+                .hasGuidance(snapshot.getMissile().getConnectionId())) {
+            LOGGER.warn(
+                    "{}: saved missile's connectionId is not known anymore: {}",
+                    snapshot.getMissile().getId(),
+                    snapshot.getMissile().getConnectionId());
+            return;
+        }
+        this.missile = snapshot.getMissile();
+        this.hardware = new Hardware(snapshot.getHardwareConfig());
+        this.tickCount = snapshot.getTime();
+        this.stateUpdateInterval = Math.max(snapshot.getStateUpdateInterval(), 1);
+        this.stateDriftThreshold = snapshot.getStateDriftThreshold();
+        if (!snapshot.getEntityLockUuid().isEmpty()) {
+            try {
+                this.restoredEntityLockUuid = UUID.fromString(snapshot.getEntityLockUuid());
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("{}: invalid saved target lock", this.missile.getId());
+            }
+        }
+        if (snapshot.getHasBlockLock()) {
+            this.seekerHeadBlockLock = BlockPos.fromLong(snapshot.getBlockLock());
+        }
+        this.restored = true;
+    }
+
     // overwrites both explodeAndRemove and explode for missiles
     @Inject(
             at = @At("HEAD"),
@@ -539,7 +1125,7 @@ public abstract class MissileMixin extends ProjectileEntity implements FlyingIte
             cancellable = true)
     private void explodeAndRemoveInject(ServerWorld world, CallbackInfo info) {
         if (this.missile != null) {
-            LOGGER.info("missile explode");
+            LOGGER.debug("missile explode");
             detonateWarhead(world);
             this.discardAndNotify();
             info.cancel();
@@ -0,0 +1,23 @@
+package com.chrisbesch.mcmissile.mixin;
+
+import com.chrisbesch.mcmissile.BlockSeekerIndex;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ServerWorld.class)
+public abstract class ServerWorldMixin {
+    // The block seeker heads cache where blocks are in a chunk section.
+    // Forget that when a block in the section changes.
+    @Inject(method = "onBlockChanged", at = @At("HEAD"))
+    private void onBlockChangedInject(
+            BlockPos pos, BlockState oldBlock, BlockState newBlock, CallbackInfo info) {
+        BlockSeekerIndex.getInstance().invalidate((ServerWorld) (Object) this, pos);
+    }
+}